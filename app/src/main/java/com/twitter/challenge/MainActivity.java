@@ -2,6 +2,7 @@ package com.twitter.challenge;
 
 import android.os.Bundle;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
@@ -13,13 +14,20 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
 
+import com.twitter.challenge.data.ForecastState;
 import com.twitter.challenge.data.WeatherViewModel;
 
 /**
  * This app has one activity, and no fragments.  Displays weather data for the current day.  If
  * requested (button press) displays the standard deviation of temperature for the next five days.
+ * While the days are still arriving it shows the deviation of the days loaded so far, updated as
+ * each one comes in.
+ * The future days are only downloaded once the button gets focus or is touched, so a user who
+ * never asks for the standard deviation does not pay for them.
  * Displays progress bar while downloading data.  Displays error messages from failed downloads.
  * Observers LiveData from a ViewModel to monitor when data is available and when there are errors.
+ * The ViewModel publishes one state object, and only the views whose part of it changed since the
+ * last state are bound again.
  */
 
 public class MainActivity extends AppCompatActivity {
@@ -33,6 +41,7 @@ public class MainActivity extends AppCompatActivity {
     private boolean mWaitingForFutureDays = false;
     private AlertDialog mDeviationDialog;
     private AlertDialog mErrorDialog;
+    private ForecastState mLastState;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,6 +55,19 @@ public class MainActivity extends AppCompatActivity {
         mPbLoading = findViewById(R.id.pbLoading);
         Button btnDeviation = findViewById(R.id.btnDeviation);
         btnDeviation.setOnClickListener(v -> displayDeviation());
+        // Start loading the future days as soon as the user looks like they will want them,
+        // rather than at the click.
+        btnDeviation.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus) {
+                mWeatherViewModel.requestFutureDays();
+            }
+        });
+        btnDeviation.setOnTouchListener((v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                mWeatherViewModel.requestFutureDays();
+            }
+            return false;
+        });
 
         setUpObservers();
     }
@@ -62,47 +84,56 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    // Create a ViewModel object and observers.
+    // Create a ViewModel object and an observer of its state.
     private void setUpObservers(){
 
         mWeatherViewModel = ViewModelProviders.of(this).get(WeatherViewModel.class);
 
-        final Observer<Boolean> currentDayLoadedObserver = (dataLoaded -> {
-            if (dataLoaded){
-                processData();
-            }
-        });
+        final Observer<ForecastState> stateObserver = (this :: processState);
 
-        final Observer<Integer> futureDaysObserver = (dataCount -> {
-            if (dataCount == mWeatherViewModel.getFutureDays() && mWaitingForFutureDays){
+        mWeatherViewModel.getLiveState().observe(this, stateObserver);
+    }
+
+    // Compare the new state with the last one and only update what changed.
+    private void processState(ForecastState state) {
+        ForecastState previous = mLastState;
+        mLastState = state;
+
+        if (state.isCurrentDayLoaded() && state.currentDayChanged(previous)) {
+            processData(state, state.locationChanged(previous));
+        }
+
+        if (state.futureDaysChanged(previous) && mWaitingForFutureDays) {
+            if (state.areFutureDaysLoaded()) {
                 mPbLoading.setVisibility(View.INVISIBLE);
                 mWaitingForFutureDays = false;
                 displayDeviation();
+            } else {
+                displayRunningDeviation();
             }
-        });
-
-        final Observer<Boolean> haveErrorObserver = (this :: processError);
+        }
 
-        mWeatherViewModel.getLiveCurrentDayLoaded().observe(this, currentDayLoadedObserver);
-        mWeatherViewModel.getLiveDataCount().observe(this, futureDaysObserver);
-        mWeatherViewModel.getLiveHaveError().observe(this, haveErrorObserver);
+        if (state.errorReported(previous)) {
+            processError();
+        }
     }
 
-    // Called when we are notified that the current days data has been downloaded.  Fill
-    // in the UI.
-    private void processData() {
+    // Called when we are notified that the current days data has been downloaded or changed.
+    // Fill in the UI.  The location line is only formatted again when the location changed.
+    private void processData(ForecastState state, boolean locationChanged) {
 
         // Leave progress bar on if user pressed standard deviation button before we got here.
         if ( ! mWaitingForFutureDays) {
             mPbLoading.setVisibility(View.INVISIBLE);
         }
-        int currentDay = 0;
-        mTvName.setText(getString(R.string.location, mWeatherViewModel.getName(currentDay)));
-        float tempC = mWeatherViewModel.getTemperature(currentDay);
-        float tempF = TemperatureConverter.celsiusToFahrenheit(tempC);
+        if (locationChanged) {
+            mTvName.setText(getString(R.string.location, state.getName()));
+        }
+        float tempC = state.getTemperature();
+        float tempF = state.getTemperatureFahrenheit();
         mTvTemperature.setText(getString(R.string.temperature, tempC, tempF));
-        mTvWind.setText(getString(R.string.wind, mWeatherViewModel.getWindSpeed(currentDay)));
-        if (mWeatherViewModel.getCloudiness(currentDay) > 50) {
+        mTvWind.setText(getString(R.string.wind, state.getWindSpeed()));
+        if (state.getCloudiness() > 50) {
             mIvCloudiness.setVisibility(View.VISIBLE);
         } else {
             mIvCloudiness.setVisibility(View.INVISIBLE);
@@ -112,11 +143,9 @@ public class MainActivity extends AppCompatActivity {
     // Notified that there was an error.  If the error happened while downloading the currents days
     // data then display error right away.  Otherwise there is no need unless the user actually
     // requests the standard deviation which requires the rest of the data.
-    private void processError(boolean haveError) {
-        if (haveError) {
-            if ( ! mWeatherViewModel.currentDayLoaded()) {
-                displayError();
-            }
+    private void processError() {
+        if ( ! mWeatherViewModel.currentDayLoaded()) {
+            displayError();
         }
     }
 
@@ -137,7 +166,9 @@ public class MainActivity extends AppCompatActivity {
         }
 
         if (mWeatherViewModel.getFutureDaysLoaded() != mWeatherViewModel.getFutureDays()){
+            mWeatherViewModel.requestFutureDays();
             mPbLoading.setVisibility(View.VISIBLE);
+            displayRunningDeviation();
             return;
         }
 
@@ -145,10 +176,30 @@ public class MainActivity extends AppCompatActivity {
 
         float tempC = mWeatherViewModel.getStandardDeviationCelsius();
         float tempF = mWeatherViewModel.getStandardDeviationFahrenheit();
+        showDeviation(getString(R.string.temperature, tempC, tempF));
+    }
 
+    // Display the standard deviation of the future days loaded so far, while the others are still
+    // on their way.  Nothing is shown until there are two days to take it from.
+    private void displayRunningDeviation() {
+        float tempC = mWeatherViewModel.getRunningStandardDeviationCelsius();
+        if (Float.isNaN(tempC)) {
+            return;
+        }
+        float tempF = mWeatherViewModel.getRunningStandardDeviationFahrenheit();
+        showDeviation(getString(R.string.deviation_so_far, tempC, tempF,
+                mWeatherViewModel.getFutureDaysLoaded(), mWeatherViewModel.getFutureDays()));
+    }
+
+    // Show the deviation dialog, or just change its message if it is already up.
+    private void showDeviation(String message) {
+        if (mDeviationDialog != null && mDeviationDialog.isShowing()) {
+            mDeviationDialog.setMessage(message);
+            return;
+        }
         mDeviationDialog = new AlertDialog.Builder(this)
                 .setTitle(getString(R.string.dialog_deviation, mWeatherViewModel.getFutureDays()))
-                .setMessage(getString(R.string.temperature, tempC, tempF))
+                .setMessage(message)
                 .setNeutralButton(R.string.ok, (dialog, id) -> {})
                 .show();
     }
@@ -0,0 +1,306 @@
+package com.twitter.challenge;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate quantiles (median, p90, p99 ...) of a series of any length in bounded memory, using
+ * the KLL sketch of Karnin, Lang and Liberty.  Samples go into a stack of compactors; when the
+ * sketch is full the lowest full compactor is sorted and every other sample, picked from a random
+ * start, moves up a level with twice the weight.  With accuracy parameter k the sketch keeps about
+ * 3k samples whatever the length of the series, and a quantile's rank is off by about 1.7 / k of
+ * the count, about 1% for the default.  Sketches are mergeable: merging two gives a sketch of
+ * both series, so sketches filled on other threads or in earlier sessions can be combined, and
+ * they can be written to and read back from a stream.  Not thread safe on its own.
+ */
+public class QuantileSketch {
+
+    /** Accuracy parameter used when none is given. */
+    public static final int DEFAULT_K = 200;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+
+    private final int mK;
+    private final Random mRandom;
+    private double[][] mLevels = new double[1][];
+    private int[] mSizes = new int[1];
+    private long mCount = 0;
+    private double mMin = Double.NaN;
+    private double mMax = Double.NaN;
+
+    public QuantileSketch() {
+        this(DEFAULT_K, new Random());
+    }
+
+    /**
+     * @param k Accuracy parameter, at least 8.  Memory and accuracy both grow with it.
+     * @param random Source of the compaction coin flips.
+     */
+    public QuantileSketch(int k, Random random) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be at least 8");
+        }
+        mK = k;
+        mRandom = random;
+        mLevels[0] = new double[levelCapacity(0)];
+    }
+
+    /**
+     * Adds one sample.  NaN is ignored.
+     *
+     * @param value The sample to add.
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (mCount == 0 || value < mMin) {
+            mMin = value;
+        }
+        if (mCount == 0 || value > mMax) {
+            mMax = value;
+        }
+        mCount++;
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Adds every sample of another sketch to this one, as if the two series had been added here.
+     *
+     * @param other The sketch to merge in.  It is not modified.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.mCount == 0) {
+            return;
+        }
+        if (mCount == 0 || other.mMin < mMin) {
+            mMin = other.mMin;
+        }
+        if (mCount == 0 || other.mMax > mMax) {
+            mMax = other.mMax;
+        }
+        mCount += other.mCount;
+        for (int level = 0; level < other.mSizes.length; level++) {
+            for (int i = 0; i < other.mSizes[level]; i++) {
+                append(level, other.mLevels[level][i]);
+            }
+        }
+        compress();
+    }
+
+    /**
+     * @return Number of samples added, including those of merged sketches.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return Smallest sample, or NaN if there are none.
+     */
+    public double getMin() {
+        return mMin;
+    }
+
+    /**
+     * @return Largest sample, or NaN if there are none.
+     */
+    public double getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return Number of samples the sketch holds, which stays bounded however many are added.
+     */
+    public int getRetained() {
+        int retained = 0;
+        for (int size : mSizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    /**
+     * Estimates a quantile.
+     *
+     * @param fraction The quantile, 0 to 1; 0.5 is the median.
+     * @return The estimate, or NaN if there are no samples.  0 and 1 give the exact minimum and
+     * maximum.
+     */
+    public double getQuantile(double fraction) {
+        if (mCount == 0) {
+            return Double.NaN;
+        }
+        if (fraction <= 0) {
+            return mMin;
+        }
+        if (fraction >= 1) {
+            return mMax;
+        }
+
+        // Every retained sample stands for 2^level samples.  Walk the levels, each sorted, in
+        // ascending order of value until the weight seen reaches the rank.
+        int levels = mSizes.length;
+        double[][] sorted = new double[levels][];
+        int[] next = new int[levels];
+        long total = 0;
+        for (int level = 0; level < levels; level++) {
+            sorted[level] = Arrays.copyOf(mLevels[level], mSizes[level]);
+            Arrays.sort(sorted[level]);
+            total += (long) mSizes[level] << level;
+        }
+        double rank = fraction * total;
+        long seen = 0;
+        while (true) {
+            int lowest = -1;
+            for (int level = 0; level < levels; level++) {
+                if (next[level] < sorted[level].length && (lowest < 0
+                        || sorted[level][next[level]] < sorted[lowest][next[lowest]])) {
+                    lowest = level;
+                }
+            }
+            if (lowest < 0) {
+                return mMax;
+            }
+            double value = sorted[lowest][next[lowest]++];
+            seen += 1L << lowest;
+            if (seen >= rank) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Estimates a percentile.
+     *
+     * @param percentile The percentile, 0 to 100.
+     * @return The estimate, or NaN if there are no samples.
+     */
+    public double getPercentile(double percentile) {
+        return getQuantile(percentile / 100);
+    }
+
+    /**
+     * Writes the sketch, so it can be read back with {@link #readFrom(DataInput, Random)}.
+     *
+     * @param out Where to write it.
+     * @throws IOException If the stream fails.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(mK);
+        out.writeLong(mCount);
+        out.writeDouble(mMin);
+        out.writeDouble(mMax);
+        out.writeInt(mSizes.length);
+        for (int level = 0; level < mSizes.length; level++) {
+            out.writeInt(mSizes[level]);
+            for (int i = 0; i < mSizes[level]; i++) {
+                out.writeDouble(mLevels[level][i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a sketch written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in Where to read it from.
+     * @param random Source of the compaction coin flips of the sketch read.
+     * @return The sketch.
+     * @throws IOException If the stream fails, or does not hold a sketch of this version.
+     */
+    public static QuantileSketch readFrom(DataInput in, Random random) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown sketch version");
+        }
+        int k = in.readInt();
+        if (k < 8) {
+            throw new IOException("Bad sketch");
+        }
+        QuantileSketch sketch = new QuantileSketch(k, random);
+        sketch.mCount = in.readLong();
+        sketch.mMin = in.readDouble();
+        sketch.mMax = in.readDouble();
+        int levels = in.readInt();
+        if (levels < 1 || levels > 64 || sketch.mCount < 0) {
+            throw new IOException("Bad sketch");
+        }
+        sketch.mLevels = new double[levels][];
+        sketch.mSizes = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            int size = in.readInt();
+            if (size < 0 || size > sketch.mCount) {
+                throw new IOException("Bad sketch");
+            }
+            sketch.mLevels[level] = new double[Math.max(size, sketch.levelCapacity(level))];
+            sketch.mSizes[level] = size;
+            for (int i = 0; i < size; i++) {
+                sketch.mLevels[level][i] = in.readDouble();
+            }
+        }
+        return sketch;
+    }
+
+    // Capacity of a level.  The top level holds k samples, each level below two thirds of the one
+    // above it, so most of the memory goes to the heaviest samples.
+    private int levelCapacity(int level) {
+        int depth = mSizes.length - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(mK * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void append(int level, double value) {
+        if (level >= mSizes.length) {
+            mLevels = Arrays.copyOf(mLevels, level + 1);
+            mSizes = Arrays.copyOf(mSizes, level + 1);
+            mLevels[level] = new double[levelCapacity(level)];
+        }
+        if (mSizes[level] == mLevels[level].length) {
+            mLevels[level] = Arrays.copyOf(mLevels[level], mLevels[level].length * 2);
+        }
+        mLevels[level][mSizes[level]++] = value;
+    }
+
+    // Compact the lowest full level until the sketch is within its total capacity.
+    private void compress() {
+        while (true) {
+            int capacity = 0;
+            for (int level = 0; level < mSizes.length; level++) {
+                capacity += levelCapacity(level);
+            }
+            if (getRetained() <= capacity) {
+                return;
+            }
+            for (int level = 0; level < mSizes.length; level++) {
+                if (mSizes[level] >= levelCapacity(level)) {
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Sort the level and move every other sample up a level, leaving one behind if it is odd.
+    private void compact(int level) {
+        double[] samples = mLevels[level];
+        int size = mSizes[level];
+        Arrays.sort(samples, 0, size);
+        int kept = size % 2;
+        int start = kept + (mRandom.nextBoolean() ? 1 : 0);
+        // Read what moves up first, the next level may be a new array.
+        double[] promoted = new double[size / 2];
+        for (int i = 0; i < promoted.length; i++) {
+            promoted[i] = samples[start + 2 * i];
+        }
+        // The odd sample out, the smallest, stays at this level.
+        mSizes[level] = kept;
+        for (double value : promoted) {
+            append(level + 1, value);
+        }
+    }
+}
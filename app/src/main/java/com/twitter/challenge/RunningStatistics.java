@@ -0,0 +1,131 @@
+package com.twitter.challenge;
+
+/**
+ * Accumulates count, mean, variance, minimum and maximum of a series one sample at a time, using
+ * Welford's algorithm.  Each sample is an O(1) update on primitive fields, so there is no need to
+ * keep the series around or box its values.  Accumulators filled on different threads can be
+ * combined with {@link #merge(RunningStatistics)}.  Not thread safe on its own.
+ */
+public class RunningStatistics {
+
+    private long mCount;
+    private double mMean;
+    private double mSumOfSquaredDeviations;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds one sample.
+     *
+     * @param value The sample to add.
+     */
+    public void add(double value) {
+        mCount++;
+        double delta = value - mMean;
+        mMean += delta / mCount;
+        mSumOfSquaredDeviations += delta * (value - mMean);
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds every sample of another accumulator to this one, as if they had all been added here.
+     * Uses the pairwise update of Chan et al., which stays stable when both sides are large.
+     *
+     * @param other The accumulator to merge in.  It is not modified.
+     */
+    public void merge(RunningStatistics other) {
+        merge(other.mCount, other.mMean, other.mSumOfSquaredDeviations, other.mMin, other.mMax);
+    }
+
+    /**
+     * Adds a summary of samples kept elsewhere, such as one read back from disk, as if the
+     * samples themselves had been added here.
+     *
+     * @param count Number of samples.
+     * @param mean Mean of the samples.
+     * @param sumOfSquaredDeviations Sum of the squared deviations of the samples from their mean.
+     * @param min Smallest sample.
+     * @param max Largest sample.
+     */
+    public void merge(long count, double mean, double sumOfSquaredDeviations, double min,
+                      double max) {
+        if (count == 0) {
+            return;
+        }
+        if (mCount == 0) {
+            mCount = count;
+            mMean = mean;
+            mSumOfSquaredDeviations = sumOfSquaredDeviations;
+            mMin = min;
+            mMax = max;
+            return;
+        }
+
+        long total = mCount + count;
+        double delta = mean - mMean;
+        mMean += delta * count / total;
+        mSumOfSquaredDeviations += sumOfSquaredDeviations
+                + delta * delta * ((double) mCount * count / total);
+        mCount = total;
+        mMin = Math.min(mMin, min);
+        mMax = Math.max(mMax, max);
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear() {
+        mCount = 0;
+        mMean = 0;
+        mSumOfSquaredDeviations = 0;
+        mMin = Double.POSITIVE_INFINITY;
+        mMax = Double.NEGATIVE_INFINITY;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return Mean of the samples, or NaN if there are none.
+     */
+    public double getMean() {
+        return mCount == 0 ? Double.NaN : mMean;
+    }
+
+    /**
+     * @return Sum of the squared deviations of the samples from their mean, 0 if there are none.
+     */
+    public double getSumOfSquaredDeviations() {
+        return mSumOfSquaredDeviations;
+    }
+
+    /**
+     * @return Sample variance (divided by n - 1), or NaN if there are fewer than two samples.
+     */
+    public double getVariance() {
+        return mCount < 2 ? Double.NaN : mSumOfSquaredDeviations / (mCount - 1);
+    }
+
+    /**
+     * @return Sample standard deviation, or NaN if there are fewer than two samples.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return Smallest sample, or positive infinity if there are none.
+     */
+    public double getMin() {
+        return mMin;
+    }
+
+    /**
+     * @return Largest sample, or negative infinity if there are none.
+     */
+    public double getMax() {
+        return mMax;
+    }
+}
@@ -0,0 +1,275 @@
+package com.twitter.challenge;
+
+/**
+ * Statistics of the samples of a series that fall within a sliding time window: count, mean,
+ * variance, minimum, maximum and percentiles, kept up to date as samples stream in and old ones
+ * drop out.  Samples are kept in primitive ring buffers that grow as needed, so nothing is boxed,
+ * and every aggregate is updated incrementally instead of by scanning the window again:
+ * <ul>
+ *     <li>mean and variance with Welford's update, run backwards for a sample that leaves,</li>
+ *     <li>minimum and maximum with monotonic queues, O(1) amortized per sample,</li>
+ *     <li>percentiles from a histogram of fixed width bins, with counts added and taken away.</li>
+ * </ul>
+ * Percentiles are exact to the bin width for samples inside the histogram range; samples outside
+ * it count in the first or last bin.  Not thread safe on its own.
+ */
+public class SlidingWindowStatistics {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long mWindowMillis;
+    private final double mBinMin;
+    private final double mBinWidth;
+    private final long[] mBinCounts;
+
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private double[] mValues = new double[INITIAL_CAPACITY];
+    private int mHead = 0;
+    private int mSize = 0;
+    private long mNextSequence = 0;
+
+    private double mMean = 0;
+    private double mSumOfSquaredDeviations = 0;
+
+    private final MonotonicQueue mMinimums = new MonotonicQueue(true);
+    private final MonotonicQueue mMaximums = new MonotonicQueue(false);
+
+    /**
+     * @param windowMillis Length of the window.  A sample stays in it until a sample that much
+     *                     newer is added, or it is evicted explicitly.
+     * @param binMin Value of the first percentile bin.
+     * @param binMax Value of the last percentile bin.
+     * @param binWidth Width of the percentile bins, the resolution of percentiles.
+     */
+    public SlidingWindowStatistics(long windowMillis, double binMin, double binMax,
+                                   double binWidth) {
+        if (windowMillis <= 0 || binWidth <= 0 || binMax < binMin) {
+            throw new IllegalArgumentException("Bad window or bins");
+        }
+        mWindowMillis = windowMillis;
+        mBinMin = binMin;
+        mBinWidth = binWidth;
+        mBinCounts = new long[(int) Math.round((binMax - binMin) / binWidth) + 1];
+    }
+
+    /**
+     * Adds one sample and drops the ones that are now out of the window.  NaN is ignored.
+     *
+     * @param timeMillis Time of the sample, no earlier than the previous sample's.
+     * @param value The sample.
+     */
+    public void add(long timeMillis, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (mSize > 0 && timeMillis < mTimes[index(mSize - 1)]) {
+            throw new IllegalArgumentException("Samples must be added in time order");
+        }
+
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        int tail = index(mSize);
+        mTimes[tail] = timeMillis;
+        mValues[tail] = value;
+        mSize++;
+        long sequence = mNextSequence++;
+
+        double delta = value - mMean;
+        mMean += delta / mSize;
+        mSumOfSquaredDeviations += delta * (value - mMean);
+        mMinimums.add(sequence, value);
+        mMaximums.add(sequence, value);
+        mBinCounts[binOf(value)]++;
+
+        evictBefore(timeMillis - mWindowMillis + 1);
+    }
+
+    /**
+     * Drops the samples made before the given time, for a window that moves with a clock rather
+     * than with the samples.
+     *
+     * @param timeMillis Time of the oldest sample to keep.
+     */
+    public void evictBefore(long timeMillis) {
+        while (mSize > 0 && mTimes[mHead] < timeMillis) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * Drops every sample.
+     */
+    public void clear() {
+        while (mSize > 0) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * @return Number of samples in the window.
+     */
+    public int getCount() {
+        return mSize;
+    }
+
+    /**
+     * @return Mean of the samples in the window, or NaN if there are none.
+     */
+    public double getMean() {
+        return mSize == 0 ? Double.NaN : mMean;
+    }
+
+    /**
+     * @return Sample variance of the window, or NaN if it has fewer than two samples.
+     */
+    public double getVariance() {
+        // Taking samples back out can leave a tiny negative rounding error.
+        return mSize < 2 ? Double.NaN : Math.max(0, mSumOfSquaredDeviations) / (mSize - 1);
+    }
+
+    /**
+     * @return Sample standard deviation of the window, or NaN if it has fewer than two samples.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return Smallest sample in the window, or NaN if there are none.
+     */
+    public double getMin() {
+        return mSize == 0 ? Double.NaN : mMinimums.front();
+    }
+
+    /**
+     * @return Largest sample in the window, or NaN if there are none.
+     */
+    public double getMax() {
+        return mSize == 0 ? Double.NaN : mMaximums.front();
+    }
+
+    /**
+     * Estimates a percentile of the window to the bin width.
+     *
+     * @param percentile The percentile, 0 to 100.
+     * @return The value of the bin the percentile falls in, or NaN if the window is empty.
+     */
+    public double getPercentile(double percentile) {
+        if (mSize == 0) {
+            return Double.NaN;
+        }
+        double fraction = Math.min(100, Math.max(0, percentile)) / 100;
+        long rank = Math.max(1, (long) Math.ceil(fraction * mSize));
+        long seen = 0;
+        for (int bin = 0; bin < mBinCounts.length; bin++) {
+            seen += mBinCounts[bin];
+            if (seen >= rank) {
+                return mBinMin + bin * mBinWidth;
+            }
+        }
+        return mBinMin + (mBinCounts.length - 1) * mBinWidth;
+    }
+
+    // Take the oldest sample back out of every aggregate.
+    private void removeOldest() {
+        double value = mValues[mHead];
+        long sequence = mNextSequence - mSize;
+        mHead = index(1);
+        mSize--;
+
+        if (mSize == 0) {
+            // Start again from exact zeros, so rounding errors don't outlive the samples.
+            mMean = 0;
+            mSumOfSquaredDeviations = 0;
+        } else {
+            double delta = value - mMean;
+            mMean -= delta / mSize;
+            mSumOfSquaredDeviations -= delta * (value - mMean);
+        }
+        mMinimums.remove(sequence);
+        mMaximums.remove(sequence);
+        mBinCounts[binOf(value)]--;
+    }
+
+    private int binOf(double value) {
+        long bin = Math.round((value - mBinMin) / mBinWidth);
+        return (int) Math.max(0, Math.min(mBinCounts.length - 1, bin));
+    }
+
+    private int index(int offset) {
+        return (mHead + offset) % mTimes.length;
+    }
+
+    private void grow() {
+        long[] times = new long[mTimes.length * 2];
+        double[] values = new double[mValues.length * 2];
+        for (int i = 0; i < mSize; i++) {
+            times[i] = mTimes[index(i)];
+            values[i] = mValues[index(i)];
+        }
+        mTimes = times;
+        mValues = values;
+        mHead = 0;
+    }
+
+    /* Samples of the window that can still become its minimum (or maximum), oldest first, with
+       their sequence numbers.  A new sample drops every queued one it beats, since those leave
+       the window before it does, so the front is always the answer.
+    */
+    private static class MonotonicQueue {
+        private final boolean mMinimum;
+        private long[] mSequences = new long[INITIAL_CAPACITY];
+        private double[] mValues = new double[INITIAL_CAPACITY];
+        private int mHead = 0;
+        private int mSize = 0;
+
+        MonotonicQueue(boolean minimum) {
+            mMinimum = minimum;
+        }
+
+        void add(long sequence, double value) {
+            while (mSize > 0) {
+                double last = mValues[index(mSize - 1)];
+                if (mMinimum ? last < value : last > value) {
+                    break;
+                }
+                mSize--;
+            }
+            if (mSize == mSequences.length) {
+                grow();
+            }
+            mSequences[index(mSize)] = sequence;
+            mValues[index(mSize)] = value;
+            mSize++;
+        }
+
+        // The sample with this sequence number left the window.
+        void remove(long sequence) {
+            if (mSize > 0 && mSequences[mHead] == sequence) {
+                mHead = index(1);
+                mSize--;
+            }
+        }
+
+        double front() {
+            return mValues[mHead];
+        }
+
+        private int index(int offset) {
+            return (mHead + offset) % mSequences.length;
+        }
+
+        private void grow() {
+            long[] sequences = new long[mSequences.length * 2];
+            double[] values = new double[mValues.length * 2];
+            for (int i = 0; i < mSize; i++) {
+                sequences[i] = mSequences[index(i)];
+                values[i] = mValues[index(i)];
+            }
+            mSequences = sequences;
+            mValues = values;
+            mHead = 0;
+        }
+    }
+}
@@ -6,18 +6,19 @@ public class StandardDeviationCalculator {
 
     public static float standardDeviation(List<Float> dataPoints) {
 
-        float total = 0;
-        for (float point : dataPoints){
-            total += point;
+        RunningStatistics statistics = new RunningStatistics();
+        for (int i = 0; i < dataPoints.size(); i++){
+            statistics.add(dataPoints.get(i));
         }
+        return (float) statistics.getStandardDeviation();
+    }
 
-        float average = total/dataPoints.size();
+    public static float standardDeviation(float[] dataPoints) {
 
-        double summation = 0;
+        RunningStatistics statistics = new RunningStatistics();
         for (float point : dataPoints){
-            summation += Math.pow((point - average), 2);
+            statistics.add(point);
         }
-
-        return (float)Math.sqrt(summation/(dataPoints.size() - 1));
+        return (float) statistics.getStandardDeviation();
     }
 }
@@ -1,6 +1,23 @@
 package com.twitter.challenge;
 
+import java.nio.BufferOverflowException;
+import java.nio.FloatBuffer;
+
+/**
+ * Temperature conversions between Celsius, Fahrenheit and Kelvin.  Each conversion comes as a
+ * single value method and as bulk methods for float arrays and FloatBuffers.  The bulk methods
+ * run one plain counted loop per conversion over the backing arrays, a shape the JIT compiles to
+ * SIMD instructions, and give the same results as calling the single value method on each value.
+ * The source and destination may be the same array to convert in place.
+ */
 public class TemperatureConverter {
+
+    private static final int CELSIUS_TO_FAHRENHEIT = 0;
+    private static final int FAHRENHEIT_TO_CELSIUS = 1;
+    private static final int CELSIUS_TO_KELVIN = 2;
+    private static final int KELVIN_TO_CELSIUS = 3;
+    private static final float KELVIN_OFFSET = 273.15f;
+
     /**
      * Converts temperature in Celsius to temperature in Fahrenheit.
      *
@@ -10,4 +27,224 @@ public class TemperatureConverter {
     public static float celsiusToFahrenheit(float temperatureInCelsius) {
         return temperatureInCelsius * 1.8f + 32;
     }
+
+    /**
+     * Converts every temperature in an array from Celsius to Fahrenheit.
+     *
+     * @param celsius Temperatures in Celsius to convert.
+     * @param fahrenheit Receives the temperatures in Fahrenheit, at least as long as celsius.
+     */
+    public static void celsiusToFahrenheit(float[] celsius, float[] fahrenheit) {
+        convert(CELSIUS_TO_FAHRENHEIT, celsius, fahrenheit);
+    }
+
+    /**
+     * Converts the remaining temperatures of a buffer from Celsius to Fahrenheit, advancing the
+     * position of both buffers like a bulk put.
+     *
+     * @param celsius Temperatures in Celsius to convert.
+     * @param fahrenheit Receives the temperatures in Fahrenheit.
+     */
+    public static void celsiusToFahrenheit(FloatBuffer celsius, FloatBuffer fahrenheit) {
+        convert(CELSIUS_TO_FAHRENHEIT, celsius, fahrenheit);
+    }
+
+    /**
+     * Converts temperature in Fahrenheit to temperature in Celsius.
+     *
+     * @param temperatureInFahrenheit Temperature in Fahrenheit to convert.
+     * @return Temperature in Celsius.
+     */
+    public static float fahrenheitToCelsius(float temperatureInFahrenheit) {
+        return (temperatureInFahrenheit - 32) / 1.8f;
+    }
+
+    /**
+     * Converts every temperature in an array from Fahrenheit to Celsius.
+     *
+     * @param fahrenheit Temperatures in Fahrenheit to convert.
+     * @param celsius Receives the temperatures in Celsius, at least as long as fahrenheit.
+     */
+    public static void fahrenheitToCelsius(float[] fahrenheit, float[] celsius) {
+        convert(FAHRENHEIT_TO_CELSIUS, fahrenheit, celsius);
+    }
+
+    /**
+     * Converts the remaining temperatures of a buffer from Fahrenheit to Celsius, advancing the
+     * position of both buffers like a bulk put.
+     *
+     * @param fahrenheit Temperatures in Fahrenheit to convert.
+     * @param celsius Receives the temperatures in Celsius.
+     */
+    public static void fahrenheitToCelsius(FloatBuffer fahrenheit, FloatBuffer celsius) {
+        convert(FAHRENHEIT_TO_CELSIUS, fahrenheit, celsius);
+    }
+
+    /**
+     * Converts temperature in Celsius to temperature in Kelvin.
+     *
+     * @param temperatureInCelsius Temperature in Celsius to convert.
+     * @return Temperature in Kelvin.
+     */
+    public static float celsiusToKelvin(float temperatureInCelsius) {
+        return temperatureInCelsius + KELVIN_OFFSET;
+    }
+
+    /**
+     * Converts every temperature in an array from Celsius to Kelvin.
+     *
+     * @param celsius Temperatures in Celsius to convert.
+     * @param kelvin Receives the temperatures in Kelvin, at least as long as celsius.
+     */
+    public static void celsiusToKelvin(float[] celsius, float[] kelvin) {
+        convert(CELSIUS_TO_KELVIN, celsius, kelvin);
+    }
+
+    /**
+     * Converts the remaining temperatures of a buffer from Celsius to Kelvin, advancing the
+     * position of both buffers like a bulk put.
+     *
+     * @param celsius Temperatures in Celsius to convert.
+     * @param kelvin Receives the temperatures in Kelvin.
+     */
+    public static void celsiusToKelvin(FloatBuffer celsius, FloatBuffer kelvin) {
+        convert(CELSIUS_TO_KELVIN, celsius, kelvin);
+    }
+
+    /**
+     * Converts temperature in Kelvin to temperature in Celsius.
+     *
+     * @param temperatureInKelvin Temperature in Kelvin to convert.
+     * @return Temperature in Celsius.
+     */
+    public static float kelvinToCelsius(float temperatureInKelvin) {
+        return temperatureInKelvin - KELVIN_OFFSET;
+    }
+
+    /**
+     * Converts every temperature in an array from Kelvin to Celsius.
+     *
+     * @param kelvin Temperatures in Kelvin to convert.
+     * @param celsius Receives the temperatures in Celsius, at least as long as kelvin.
+     */
+    public static void kelvinToCelsius(float[] kelvin, float[] celsius) {
+        convert(KELVIN_TO_CELSIUS, kelvin, celsius);
+    }
+
+    /**
+     * Converts the remaining temperatures of a buffer from Kelvin to Celsius, advancing the
+     * position of both buffers like a bulk put.
+     *
+     * @param kelvin Temperatures in Kelvin to convert.
+     * @param celsius Receives the temperatures in Celsius.
+     */
+    public static void kelvinToCelsius(FloatBuffer kelvin, FloatBuffer celsius) {
+        convert(KELVIN_TO_CELSIUS, kelvin, celsius);
+    }
+
+    /**
+     * Converts a temperature difference in Celsius, such as a standard deviation, to the same
+     * difference in Fahrenheit.  Unlike a temperature there is no offset, only the scale changes.
+     *
+     * @param differenceInCelsius Temperature difference in Celsius to convert.
+     * @return Temperature difference in Fahrenheit.
+     */
+    public static float celsiusDifferenceToFahrenheit(float differenceInCelsius) {
+        return differenceInCelsius * 1.8f;
+    }
+
+    private static void convert(int conversion, float[] from, float[] to) {
+        if (to.length < from.length) {
+            throw new IllegalArgumentException("Destination holds " + to.length
+                    + " temperatures, " + from.length + " needed");
+        }
+        convert(conversion, from, 0, to, 0, from.length);
+    }
+
+    // Buffers backed by arrays take the array loop.  Direct buffers are converted value by value
+    // with absolute gets and puts.
+    private static void convert(int conversion, FloatBuffer from, FloatBuffer to) {
+        int length = from.remaining();
+        if (to.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+
+        int fromPosition = from.position();
+        int toPosition = to.position();
+        if (from.hasArray() && to.hasArray()) {
+            convert(conversion, from.array(), from.arrayOffset() + fromPosition,
+                    to.array(), to.arrayOffset() + toPosition, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                to.put(toPosition + i, convert(conversion, from.get(fromPosition + i)));
+            }
+        }
+        from.position(fromPosition + length);
+        to.position(toPosition + length);
+    }
+
+    // One small method per conversion, each a single counted loop with the formula written out,
+    // so the JIT can compile it to SIMD instructions.
+    private static void convert(int conversion, float[] from, int fromOffset, float[] to,
+                                int toOffset, int length) {
+        switch (conversion) {
+            case CELSIUS_TO_FAHRENHEIT:
+                celsiusToFahrenheit(from, fromOffset, to, toOffset, length);
+                break;
+            case FAHRENHEIT_TO_CELSIUS:
+                fahrenheitToCelsius(from, fromOffset, to, toOffset, length);
+                break;
+            case CELSIUS_TO_KELVIN:
+                celsiusToKelvin(from, fromOffset, to, toOffset, length);
+                break;
+            case KELVIN_TO_CELSIUS:
+                kelvinToCelsius(from, fromOffset, to, toOffset, length);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown conversion " + conversion);
+        }
+    }
+
+    private static void celsiusToFahrenheit(float[] from, int fromOffset, float[] to,
+                                            int toOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            to[toOffset + i] = from[fromOffset + i] * 1.8f + 32;
+        }
+    }
+
+    private static void fahrenheitToCelsius(float[] from, int fromOffset, float[] to,
+                                            int toOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            to[toOffset + i] = (from[fromOffset + i] - 32) / 1.8f;
+        }
+    }
+
+    private static void celsiusToKelvin(float[] from, int fromOffset, float[] to,
+                                        int toOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            to[toOffset + i] = from[fromOffset + i] + KELVIN_OFFSET;
+        }
+    }
+
+    private static void kelvinToCelsius(float[] from, int fromOffset, float[] to,
+                                        int toOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            to[toOffset + i] = from[fromOffset + i] - KELVIN_OFFSET;
+        }
+    }
+
+    private static float convert(int conversion, float temperature) {
+        switch (conversion) {
+            case CELSIUS_TO_FAHRENHEIT:
+                return celsiusToFahrenheit(temperature);
+            case FAHRENHEIT_TO_CELSIUS:
+                return fahrenheitToCelsius(temperature);
+            case CELSIUS_TO_KELVIN:
+                return celsiusToKelvin(temperature);
+            case KELVIN_TO_CELSIUS:
+                return kelvinToCelsius(temperature);
+            default:
+                throw new IllegalArgumentException("Unknown conversion " + conversion);
+        }
+    }
 }
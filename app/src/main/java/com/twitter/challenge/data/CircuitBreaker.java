@@ -0,0 +1,87 @@
+package com.twitter.challenge.data;
+
+import java.io.IOException;
+
+/* Stops requests to a host that keeps failing.  After a number of failures in a row the circuit
+ * opens and requests are refused for a while without touching the network.  Once that time is up
+ * one trial request is let through: if it succeeds the circuit closes, if it fails the circuit
+ * opens again.  Times are passed in, in milliseconds, so the caller decides the clock.
+ */
+class CircuitBreaker {
+
+    // Thrown instead of making a request while the circuit is open.
+    static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final long retryAfterMillis;
+
+        OpenException(long retryAfterMillis) {
+            super("Server unavailable, retrying in " + (retryAfterMillis + 999) / 1000 + "s");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private int mFailures = 0;
+    private long mOpenUntil = 0;
+    private boolean mTrialInFlight = false;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        mFailureThreshold = Math.max(1, failureThreshold);
+        mOpenMillis = openMillis;
+    }
+
+    /* Return true if a request may be made now.  While half open only the first caller gets to
+       make the trial request.
+    */
+    synchronized boolean allowRequest(long now) {
+        if (mFailures < mFailureThreshold) {
+            return true;
+        }
+        if (now < mOpenUntil || mTrialInFlight) {
+            return false;
+        }
+        mTrialInFlight = true;
+        return true;
+    }
+
+    // Throw an OpenException if a request may not be made now.
+    void checkRequest(long now) throws OpenException {
+        if (! allowRequest(now)) {
+            throw new OpenException(getRetryAfter(now));
+        }
+    }
+
+    // The host answered, whatever the answer was.
+    synchronized void onSuccess() {
+        mFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    // The host could not be reached or had a server error.
+    synchronized void onFailure(long now) {
+        mFailures++;
+        mTrialInFlight = false;
+        if (mFailures >= mFailureThreshold) {
+            mOpenUntil = now + mOpenMillis;
+        }
+    }
+
+    // The request was cancelled or failed in a way that tells nothing about the host.
+    synchronized void onInconclusive() {
+        mTrialInFlight = false;
+    }
+
+    synchronized boolean isOpen(long now) {
+        return mFailures >= mFailureThreshold && now < mOpenUntil;
+    }
+
+    // Milliseconds until a trial request will be allowed, 0 if requests are allowed now.
+    synchronized long getRetryAfter(long now) {
+        if (mFailures < mFailureThreshold) {
+            return 0;
+        }
+        return Math.max(0, mOpenUntil - now);
+    }
+}
@@ -0,0 +1,316 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.Moshi;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/* Downloads and parses the document of one endpoint, the ingestion path shared by every day and
+ * location.  A stale cached copy is revalidated with a conditional request, successful downloads
+ * are written to the cache.  Concurrent loads of the same endpoint share one call and its result
+ * through a SingleFlight, which can be shared between loaders.  Requests go through a
+ * CircuitBreaker, so a host that keeps failing is left alone for a while.  Several endpoints can
+ * also be loaded with one batch request, if the loader was told the server supports it; if the
+ * server then answers that it does not, batches are no longer tried.  This class has no Android
+ * dependencies, so the same path can be exercised on a plain JVM.
+ */
+class EndpointLoader {
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_NOT_IMPLEMENTED = 501;
+    private static final String BATCH_SEPARATOR = ",";
+    private static final String ID_ENCODING = "UTF-8";
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 30 * 1000L;
+
+    // A response with an error status.  The message is the error body.
+    static class HttpError extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        HttpError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private final WeatherDataEndpointApi mEndpointApi;
+    private final WeatherDataCache mCache;
+    private final SingleFlight<WeatherData> mFlights;
+    private final CircuitBreaker mBreaker;
+    private final AtomicInteger mBodiesDownloaded = new AtomicInteger();
+    private final AtomicInteger mBodiesAvoided = new AtomicInteger();
+    private final AtomicInteger mBatches = new AtomicInteger();
+    private final JsonAdapter<WeatherData> mAdapter;
+    private final LoadMetrics mMetrics = LoadMetrics.getShared();
+    private volatile boolean mBatchAvailable;
+
+    // Called for each document of a batch as soon as it is parsed and cached.
+    interface BatchListener {
+        void onLoaded(int index, WeatherData weatherData);
+    }
+
+    // Responses are decoded with the WeatherData adapter of the given Moshi.
+    EndpointLoader(WeatherDataEndpointApi endpointApi, Moshi moshi, WeatherDataCache cache) {
+        this(endpointApi, moshi, cache, new SingleFlight<>(),
+                new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS), false);
+    }
+
+    // batchSupported is whether the server is known to answer batch requests.  Without it
+    // isBatchAvailable() is false from the start, so no request is wasted finding out.
+    EndpointLoader(WeatherDataEndpointApi endpointApi, Moshi moshi, WeatherDataCache cache,
+                   SingleFlight<WeatherData> flights, CircuitBreaker breaker,
+                   boolean batchSupported) {
+        mEndpointApi = endpointApi;
+        mAdapter = moshi.adapter(WeatherData.class);
+        mCache = cache;
+        mFlights = flights;
+        mBreaker = breaker;
+        mBatchAvailable = batchSupported;
+    }
+
+    // Moshi set up with the streaming adapter.  The app only shows a few fields, so the adapter
+    // skips the rest, and the WeatherData it returns are lean.
+    static Moshi createMoshi() {
+        return new Moshi.Builder()
+                .add(WeatherData.class, new WeatherDataJsonAdapter(true))
+                .build();
+    }
+
+    // Build Retrofit object and create Retrofit api class, using the app's shared client.  The
+    // api returns raw bodies, which the loader decodes itself, so no converter is needed.
+    static WeatherDataEndpointApi createApi(String baseUrl) {
+        return createApi(baseUrl, HttpClients.getShared());
+    }
+
+    static WeatherDataEndpointApi createApi(String baseUrl, OkHttpClient client) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .build();
+        return retrofit.create(WeatherDataEndpointApi.class);
+    }
+
+    /*Download the data for one endpoint, conditionally if there is a cached copy.  Store
+      successful downloads in the cache, fresh for timeToLive milliseconds.  Return the downloaded
+      data, or the cached data if it has not changed.  Failed downloads throw an IOException whose
+      message is the error to show, an HttpError if the server answered with an error status.
+      While the circuit is open no request is made and a CircuitBreaker.OpenException is thrown.
+      If a fetch is given the call is registered with it so it can be cancelled.  If the endpoint
+      is already being loaded this waits for that load and returns its result instead of making
+      another call.
+    */
+    WeatherData load(String endPoint, long timeToLive, WeatherDataCache.Entry cached,
+                     FetchScheduler.Fetch fetch) throws IOException {
+        return load(endPoint, timeToLive, cached, fetch, 1);
+    }
+
+    // The same, for the given attempt of the RetryPolicy.  A call made for a later attempt than
+    // the first is recorded as a retry.
+    WeatherData load(String endPoint, long timeToLive, WeatherDataCache.Entry cached,
+                     FetchScheduler.Fetch fetch, int attempt) throws IOException {
+        return mFlights.load(endPoint, fetch,
+                () -> download(endPoint, timeToLive, cached, fetch, attempt));
+    }
+
+    private WeatherData download(String endPoint, long timeToLive, WeatherDataCache.Entry cached,
+                                 FetchScheduler.Fetch fetch, int attempt) throws IOException {
+
+        boolean haveCachedData = cached != null;
+        mMetrics.recordAttempt(endPoint, attempt);
+
+        Call<ResponseBody> call;
+        if (haveCachedData) {
+            call = mEndpointApi.getWeatherData(endPoint, cached.eTag, cached.lastModified);
+        } else {
+            call = mEndpointApi.getWeatherData(endPoint);
+        }
+        if (fetch != null) {
+            fetch.setCall(call);
+        }
+        mBreaker.checkRequest(System.currentTimeMillis());
+        Response<ResponseBody> response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            if (call.isCanceled()) {
+                mBreaker.onInconclusive();
+            } else {
+                mBreaker.onFailure(System.currentTimeMillis());
+            }
+            throw e;
+        }
+        if (RetryPolicy.isRetryable(response.code())) {
+            mBreaker.onFailure(System.currentTimeMillis());
+        } else {
+            mBreaker.onSuccess();
+        }
+
+        // Not modified.  Retrofit treats this as an error, but there is no body to read.  Keep
+        // the copy we already parsed and just make it fresh again.
+        if (haveCachedData && response.code() == HTTP_NOT_MODIFIED) {
+            mBodiesAvoided.incrementAndGet();
+            mCache.refresh(endPoint, timeToLive);
+            return cached.data;
+        }
+
+        // The errorBody is actually a read once stream, and reading it may actually produce
+        // its own error.
+        ResponseBody errorBody = response.errorBody();
+        if (errorBody != null) {
+            try {
+                throw new HttpError(response.code(), errorBody.string());
+            } finally {
+                errorBody.close();
+            }
+        }
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("Empty response for " + endPoint);
+        }
+        WeatherData weatherData;
+        long decodeStart = System.nanoTime();
+        try {
+            weatherData = mAdapter.fromJson(body.source());
+        } catch (RuntimeException e) {
+            // Moshi reports malformed JSON as a JsonDataException.
+            throw new IOException("Bad response for " + endPoint + ": " + e.getMessage(), e);
+        } finally {
+            body.close();
+        }
+        mMetrics.recordDecode(endPoint, decodeStart);
+        if (weatherData == null) {
+            throw new IOException("Empty response for " + endPoint);
+        }
+        mBodiesDownloaded.incrementAndGet();
+        mCache.put(endPoint, weatherData, timeToLive, response.headers().get("ETag"),
+                response.headers().get("Last-Modified"));
+        return weatherData;
+    }
+
+    /*Download several endpoints with one request and cache each document, fresh for its
+      timeToLive.  The listener gets every document the server had, with its index in endPoints,
+      while the rest of the response is still arriving; endpoints the server did not have are left
+      out.  Failures throw an IOException like load() does, possibly after some documents were
+      delivered.  If the server does not support batches an HttpError is thrown and
+      isBatchAvailable() returns false from then on.  Batches do not go through the SingleFlight
+      and are not conditional, so they are meant for endpoints with no cached copy.
+    */
+    void loadBatch(List<String> endPoints, long[] timeToLive, FetchScheduler.Fetch fetch,
+                   BatchListener listener) throws IOException {
+        StringBuilder ids = new StringBuilder();
+        for (String endPoint : endPoints) {
+            if (ids.length() > 0) {
+                ids.append(BATCH_SEPARATOR);
+            }
+            // The separator is sent as is, so an id is escaped on its own.
+            ids.append(URLEncoder.encode(endPoint, ID_ENCODING));
+        }
+
+        Call<ResponseBody> call = mEndpointApi.getWeatherDataBatch(ids.toString());
+        if (fetch != null) {
+            fetch.setCall(call);
+        }
+        mBreaker.checkRequest(System.currentTimeMillis());
+        Response<ResponseBody> response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            if (call.isCanceled()) {
+                mBreaker.onInconclusive();
+            } else {
+                mBreaker.onFailure(System.currentTimeMillis());
+            }
+            throw e;
+        }
+        if (RetryPolicy.isRetryable(response.code())) {
+            mBreaker.onFailure(System.currentTimeMillis());
+        } else {
+            mBreaker.onSuccess();
+        }
+
+        ResponseBody errorBody = response.errorBody();
+        if (errorBody != null) {
+            int code = response.code();
+            // A static host such as S3 answers 403 for a document it does not have.
+            if (code == HTTP_FORBIDDEN || code == HTTP_NOT_FOUND
+                    || code == HTTP_METHOD_NOT_ALLOWED || code == HTTP_NOT_IMPLEMENTED) {
+                mBatchAvailable = false;
+            }
+            try {
+                throw new HttpError(code, errorBody.string());
+            } finally {
+                errorBody.close();
+            }
+        }
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("Empty response for batch " + ids);
+        }
+        mBatches.incrementAndGet();
+        try (JsonReader reader = JsonReader.of(body.source())) {
+            reader.beginArray();
+            for (int index = 0; reader.hasNext(); index++) {
+                if (reader.peek() == JsonReader.Token.NULL || index >= endPoints.size()) {
+                    reader.skipValue();
+                    continue;
+                }
+                long decodeStart = System.nanoTime();
+                WeatherData weatherData = mAdapter.fromJson(reader);
+                mMetrics.recordDecode(endPoints.get(index), decodeStart);
+                if (weatherData == null) {
+                    continue;
+                }
+                mBodiesDownloaded.incrementAndGet();
+                mCache.put(endPoints.get(index), weatherData, timeToLive[index], null, null);
+                listener.onLoaded(index, weatherData);
+            }
+            reader.endArray();
+        } catch (RuntimeException e) {
+            // Moshi reports malformed JSON as a JsonDataException.
+            throw new IOException("Bad batch response: " + e.getMessage(), e);
+        }
+    }
+
+    // True if the server was said to support batch requests and has not answered otherwise.
+    // loadBatch() does not check it.
+    boolean isBatchAvailable() {
+        return mBatchAvailable;
+    }
+
+    // Number of batch responses that were read.
+    int getBatches() {
+        return mBatches.get();
+    }
+
+    // Number of responses that came with a body that had to be parsed.
+    int getBodiesDownloaded() {
+        return mBodiesDownloaded.get();
+    }
+
+    // Number of conditional requests answered with 304, so no body was downloaded or parsed.
+    int getBodiesAvoided() {
+        return mBodiesAvoided.get();
+    }
+
+    // Number of loads that joined a call already in flight instead of making their own.
+    int getLoadsShared() {
+        return mFlights.getShared();
+    }
+}
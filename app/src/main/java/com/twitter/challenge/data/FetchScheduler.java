@@ -0,0 +1,217 @@
+package com.twitter.challenge.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import retrofit2.Call;
+
+/* Runs download jobs on an executor with a bound on how many are in flight at once.  Waiting jobs
+ * are kept in a priority queue: each job belongs to a group (a location) with a group priority
+ * that can change while it waits, and has its own priority within the group (the day).  Lower
+ * values run first, ties run in submission order.  A job whose key is already waiting or running
+ * is not submitted again.  All the jobs of a group can be cancelled; running jobs have their
+ * Retrofit call cancelled so the socket is released right away.  Once shut down every job is
+ * cancelled and nothing more is accepted.  A job's slot and key are always released when it ends,
+ * even if it throws or the executor won't take it; exceptions are printed, not rethrown.
+ */
+class FetchScheduler {
+
+    // The work done by a Fetch.  The fetch is passed in so the job can register its call and
+    // check whether it was cancelled.
+    interface Job {
+        void run(Fetch fetch);
+    }
+
+    // One submitted job and its place in the queue.
+    static class Fetch {
+        final String key;
+        final String group;
+        final int priority;
+        private final Job mJob;
+        private final long mSequence;
+        private int mGroupPriority;
+        private volatile boolean mCancelled;
+        private volatile Call<?> mCall;
+        private volatile Runnable mOnCancel;
+
+        private Fetch(String key, String group, int groupPriority, int priority, Job job,
+                      long sequence) {
+            this.key = key;
+            this.group = group;
+            this.priority = priority;
+            mGroupPriority = groupPriority;
+            mJob = job;
+            mSequence = sequence;
+        }
+
+        // Remember the call that is running so cancel() can abort it.  If the fetch was
+        // cancelled already the call is cancelled right away.
+        void setCall(Call<?> call) {
+            mCall = call;
+            if (mCancelled) {
+                call.cancel();
+            }
+        }
+
+        // Remember work to run when the fetch is cancelled, like waking a job that waits for
+        // another job's call instead of running its own.  Null forgets it.
+        void setOnCancel(Runnable onCancel) {
+            mOnCancel = onCancel;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        private void cancel() {
+            mCancelled = true;
+            Call<?> call = mCall;
+            if (call != null) {
+                call.cancel();
+            }
+            Runnable onCancel = mOnCancel;
+            if (onCancel != null) {
+                onCancel.run();
+            }
+        }
+    }
+
+    private final Executor mExecutor;
+    private final int mMaxInFlight;
+    private final PriorityQueue<Fetch> mWaiting = new PriorityQueue<>(16, (a, b) -> {
+        if (a.mGroupPriority != b.mGroupPriority) {
+            return a.mGroupPriority < b.mGroupPriority ? -1 : 1;
+        }
+        if (a.priority != b.priority) {
+            return a.priority < b.priority ? -1 : 1;
+        }
+        return a.mSequence < b.mSequence ? -1 : (a.mSequence == b.mSequence ? 0 : 1);
+    });
+    private final Map<String, Fetch> mByKey = new HashMap<>();
+    private final Map<String, Integer> mGroupPriorities = new HashMap<>();
+    private int mInFlight = 0;
+    private long mSequence = 0;
+    private boolean mShutDown = false;
+
+    FetchScheduler(Executor executor, int maxInFlight) {
+        mExecutor = executor;
+        mMaxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /* Queue a job.  Returns false, and does nothing, if a job with the same key is already
+       waiting or running, or the scheduler was shut down.
+    */
+    synchronized boolean submit(String key, String group, int priority, Job job) {
+        if (mShutDown || mByKey.containsKey(key)) {
+            return false;
+        }
+
+        Fetch fetch = new Fetch(key, group, getGroupPriority(group), priority, job, mSequence++);
+        mByKey.put(key, fetch);
+        mWaiting.add(fetch);
+        dispatch();
+        return true;
+    }
+
+    // Change the priority of a group.  Jobs of the group that are still waiting move in the queue.
+    synchronized void setGroupPriority(String group, int groupPriority) {
+        mGroupPriorities.put(group, groupPriority);
+
+        List<Fetch> moved = new ArrayList<>();
+        for (Iterator<Fetch> iterator = mWaiting.iterator(); iterator.hasNext(); ) {
+            Fetch fetch = iterator.next();
+            if (fetch.group.equals(group)) {
+                iterator.remove();
+                moved.add(fetch);
+            }
+        }
+        for (Fetch fetch : moved) {
+            fetch.mGroupPriority = groupPriority;
+            mWaiting.add(fetch);
+        }
+    }
+
+    // Drop the waiting jobs of a group and cancel its running ones.
+    synchronized void cancel(String group) {
+        for (Iterator<Fetch> iterator = mByKey.values().iterator(); iterator.hasNext(); ) {
+            Fetch fetch = iterator.next();
+            if (fetch.group.equals(group)) {
+                iterator.remove();
+                mWaiting.remove(fetch);
+                fetch.cancel();
+            }
+        }
+        mGroupPriorities.remove(group);
+    }
+
+    // Drop every waiting job, cancel the running ones and stop accepting new ones.
+    synchronized void shutDown() {
+        mShutDown = true;
+        for (Fetch fetch : mByKey.values()) {
+            fetch.cancel();
+        }
+        mByKey.clear();
+        mWaiting.clear();
+    }
+
+    synchronized boolean isShutDown() {
+        return mShutDown;
+    }
+
+    // True if a job with this key is waiting or running.
+    synchronized boolean isPending(String key) {
+        return mByKey.containsKey(key);
+    }
+
+    synchronized int getInFlight() {
+        return mInFlight;
+    }
+
+    private int getGroupPriority(String group) {
+        Integer groupPriority = mGroupPriorities.get(group);
+        return groupPriority == null ? 0 : groupPriority;
+    }
+
+    // Start waiting jobs, best first, while there is room.
+    private void dispatch() {
+        while (mInFlight < mMaxInFlight && !mWaiting.isEmpty()) {
+            Fetch fetch = mWaiting.poll();
+            mInFlight++;
+            try {
+                mExecutor.execute(() -> run(fetch));
+            } catch (RejectedExecutionException e) {
+                e.printStackTrace();
+                mInFlight--;
+                mByKey.remove(fetch.key);
+                fetch.cancel();
+            }
+        }
+    }
+
+    private void run(Fetch fetch) {
+        try {
+            if (!fetch.isCancelled()) {
+                fetch.mJob.run(fetch);
+            }
+        } catch (RuntimeException e) {
+            // A broken job must not take the thread, or its slot, with it.
+            e.printStackTrace();
+        } finally {
+            finished(fetch);
+        }
+    }
+
+    private synchronized void finished(Fetch fetch) {
+        mInFlight--;
+        if (mByKey.get(fetch.key) == fetch) {
+            mByKey.remove(fetch.key);
+        }
+        dispatch();
+    }
+}
@@ -0,0 +1,195 @@
+package com.twitter.challenge.data;
+
+import com.twitter.challenge.QuantileSketch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/* Quantile sketches of every temperature and wind speed downloaded, per location, kept across
+ * launches.  The sketches saved by earlier sessions are read back on first use and the new
+ * samples are added to them, so the quantiles cover every session in bounded memory.  The
+ * quantiles of all the locations together are those of their merged sketches.  Each forecast
+ * day is added once: refreshing an endpoint that still has the same values for the same date adds
+ * nothing, so days that are refreshed often don't weigh more than the others.  The file is
+ * written to a temporary file first and then renamed, like the other files the app keeps; a file
+ * that can't be read is started over.
+ */
+class ForecastSketches {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mFile;
+    private final Random mRandom = new Random();
+    private Map<String, QuantileSketch> mTemperatures;
+    private Map<String, QuantileSketch> mWindSpeeds;
+    // The date and values last added for each endpoint.
+    private Map<String, Day> mAdded;
+    private boolean mChanged = false;
+
+    private static final class Day {
+        final long date;
+        final double temperatureC;
+        final double windSpeed;
+
+        Day(long date, double temperatureC, double windSpeed) {
+            this.date = date;
+            this.temperatureC = temperatureC;
+            this.windSpeed = windSpeed;
+        }
+
+        boolean isSameAs(long otherDate, double otherTemperatureC, double otherWindSpeed) {
+            // Compared as bits so that NaN equals NaN.
+            return date == otherDate
+                    && Double.doubleToLongBits(temperatureC)
+                            == Double.doubleToLongBits(otherTemperatureC)
+                    && Double.doubleToLongBits(windSpeed)
+                            == Double.doubleToLongBits(otherWindSpeed);
+        }
+    }
+
+    ForecastSketches(File file) {
+        mFile = file;
+    }
+
+    /* Add the values of one downloaded day, which the endpoint forecasts for the given date, unless
+       they were already added for that endpoint and date.  NaN values are left out.
+    */
+    synchronized void add(String location, String endPoint, long date, double temperatureC,
+                          double windSpeed) {
+        load();
+        Day added = mAdded.get(endPoint);
+        if (added != null && added.isSameAs(date, temperatureC, windSpeed)) {
+            return;
+        }
+        mAdded.put(endPoint, new Day(date, temperatureC, windSpeed));
+        getSketch(mTemperatures, location).add(temperatureC);
+        getSketch(mWindSpeeds, location).add(windSpeed);
+        mChanged = true;
+    }
+
+    /* Estimated percentile (0 to 100) of the temperatures downloaded for the location, in Celsius,
+       or of every location if it is null.  NaN if there are none.
+    */
+    synchronized double getTemperaturePercentile(String location, double percentile) {
+        load();
+        return getPercentile(mTemperatures, location, percentile);
+    }
+
+    synchronized double getWindSpeedPercentile(String location, double percentile) {
+        load();
+        return getPercentile(mWindSpeeds, location, percentile);
+    }
+
+    // Write every sketch, if any has changed since the last save.  Errors are printed and the
+    // new samples are kept for the next save.
+    synchronized void save() {
+        if (! mChanged) {
+            return;
+        }
+        File directory = mFile.getParentFile();
+        if (directory != null && ! directory.exists() && ! directory.mkdirs()) {
+            return;
+        }
+
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(mTemperatures.size());
+            for (Map.Entry<String, QuantileSketch> entry : mTemperatures.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+                getSketch(mWindSpeeds, entry.getKey()).writeTo(out);
+            }
+            out.writeInt(mAdded.size());
+            for (Map.Entry<String, Day> entry : mAdded.entrySet()) {
+                Day day = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(day.date);
+                out.writeDouble(day.temperatureC);
+                out.writeDouble(day.windSpeed);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+
+        mFile.delete();
+        if (temp.renameTo(mFile)) {
+            mChanged = false;
+        } else {
+            temp.delete();
+        }
+    }
+
+    private double getPercentile(Map<String, QuantileSketch> sketches, String location,
+                                 double percentile) {
+        if (location != null) {
+            QuantileSketch sketch = sketches.get(location);
+            return sketch == null ? Double.NaN : sketch.getPercentile(percentile);
+        }
+        QuantileSketch all = new QuantileSketch(QuantileSketch.DEFAULT_K, mRandom);
+        for (QuantileSketch sketch : sketches.values()) {
+            all.merge(sketch);
+        }
+        return all.getPercentile(percentile);
+    }
+
+    private QuantileSketch getSketch(Map<String, QuantileSketch> sketches, String location) {
+        QuantileSketch sketch = sketches.get(location);
+        if (sketch == null) {
+            sketch = new QuantileSketch(QuantileSketch.DEFAULT_K, mRandom);
+            sketches.put(location, sketch);
+        }
+        return sketch;
+    }
+
+    // Read the sketches of earlier sessions the first time they are needed.
+    private void load() {
+        if (mTemperatures != null) {
+            return;
+        }
+        mTemperatures = new LinkedHashMap<>();
+        mWindSpeeds = new LinkedHashMap<>();
+        mAdded = new HashMap<>();
+        if (! mFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(mFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown sketch file version");
+            }
+            int locations = in.readInt();
+            for (int i = 0; i < locations; i++) {
+                String location = in.readUTF();
+                mTemperatures.put(location, QuantileSketch.readFrom(in, mRandom));
+                mWindSpeeds.put(location, QuantileSketch.readFrom(in, mRandom));
+            }
+            int days = in.readInt();
+            for (int i = 0; i < days; i++) {
+                String endPoint = in.readUTF();
+                mAdded.put(endPoint, new Day(in.readLong(), in.readDouble(), in.readDouble()));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            mTemperatures.clear();
+            mWindSpeeds.clear();
+            mAdded.clear();
+            mFile.delete();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.twitter.challenge.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Binary snapshot of the forecasts shown by the app, written when a load completes and read at
+ * the next launch so the first frame can be drawn before anything is parsed or downloaded.  The
+ * file is memory mapped and every field is read in place from a fixed offset, so opening it
+ * costs no JSON parsing and reading a value allocates nothing; only names are decoded into
+ * strings.  Layout, all big endian:
+ *
+ *   header    magic, version, written at (long), location count, days per location
+ *   locations location name offset and length, offset of the location's first day record
+ *   days      loaded flag (byte), temperature (double), wind speed (double), cloudiness (int),
+ *             name offset and length
+ *   strings   UTF-8 bytes of the location and day names
+ *
+ * Missing values are stored the way ForecastStore keeps them, NaN and MISSING.
+ */
+class ForecastSnapshot {
+
+    private static final int MAGIC = 0x57465331;  // "WFS1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+    private static final int LOCATION_BYTES = 4 + 4 + 4;
+    private static final int DAY_BYTES = 1 + 8 + 8 + 4 + 4 + 4;
+    private static final int NO_STRING = -1;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final long mWrittenAt;
+    private final int mLocations;
+    private final int mDays;
+
+    private ForecastSnapshot(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mWrittenAt = buffer.getLong(8);
+        mLocations = buffer.getInt(16);
+        mDays = buffer.getInt(20);
+    }
+
+    /* Map the snapshot file.  Returns null if there is none, or it is from another version,
+       damaged or was written more than maxAgeMillis before now, in which case it is deleted.
+       Every offset and length in the file is checked here, so the getters can read without
+       checks of their own.
+    */
+    static ForecastSnapshot open(File file, long now, long maxAgeMillis) {
+        if (! file.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != FORMAT_VERSION) {
+                file.delete();
+                return null;
+            }
+            ForecastSnapshot snapshot = new ForecastSnapshot(buffer);
+            long needed = HEADER_BYTES + (long) snapshot.mLocations
+                    * (LOCATION_BYTES + (long) snapshot.mDays * DAY_BYTES);
+            if (now - snapshot.mWrittenAt > maxAgeMillis || snapshot.mLocations < 0
+                    || snapshot.mDays < 0 || buffer.capacity() < needed || ! snapshot.isValid()) {
+                file.delete();
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    // True if every location entry and day record points inside the file.
+    private boolean isValid() {
+        int capacity = mBuffer.capacity();
+        for (int index = 0; index < mLocations; index++) {
+            int entry = HEADER_BYTES + index * LOCATION_BYTES;
+            int daysStart = mBuffer.getInt(entry + 8);
+            if (! isInside(mBuffer.getInt(entry), mBuffer.getInt(entry + 4), capacity)
+                    || daysStart < HEADER_BYTES
+                    || daysStart + (long) mDays * DAY_BYTES > capacity) {
+                return false;
+            }
+            for (int day = 0; day < mDays; day++) {
+                int offset = daysStart + day * DAY_BYTES;
+                if (! isInside(mBuffer.getInt(offset + 21), mBuffer.getInt(offset + 25),
+                        capacity)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // True if the string is missing, or all its bytes are inside the file.
+    private static boolean isInside(int offset, int length, int capacity) {
+        if (offset == NO_STRING) {
+            return true;
+        }
+        return offset >= HEADER_BYTES && length >= 0 && offset + (long) length <= capacity;
+    }
+
+    long getWrittenAt() {
+        return mWrittenAt;
+    }
+
+    int getDays() {
+        return mDays;
+    }
+
+    // Index of the location in the snapshot, or -1 if it is not there.
+    int indexOf(String location) {
+        byte[] wanted = location.getBytes(UTF_8);
+        for (int index = 0; index < mLocations; index++) {
+            int entry = HEADER_BYTES + index * LOCATION_BYTES;
+            if (stringEquals(mBuffer.getInt(entry), mBuffer.getInt(entry + 4), wanted)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    boolean isLoaded(int index, int day) {
+        return day >= 0 && day < mDays && mBuffer.get(dayOffset(index, day)) != 0;
+    }
+
+    String getName(int index, int day) {
+        int offset = dayOffset(index, day);
+        return getString(mBuffer.getInt(offset + 21), mBuffer.getInt(offset + 25));
+    }
+
+    double getTemperature(int index, int day) {
+        return mBuffer.getDouble(dayOffset(index, day) + 1);
+    }
+
+    double getWindSpeed(int index, int day) {
+        return mBuffer.getDouble(dayOffset(index, day) + 9);
+    }
+
+    int getCloudiness(int index, int day) {
+        return mBuffer.getInt(dayOffset(index, day) + 17);
+    }
+
+    private int dayOffset(int index, int day) {
+        int entry = HEADER_BYTES + index * LOCATION_BYTES;
+        return mBuffer.getInt(entry + 8) + day * DAY_BYTES;
+    }
+
+    private String getString(int offset, int length) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private boolean stringEquals(int offset, int length, byte[] wanted) {
+        if (offset == NO_STRING || length != wanted.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBuffer.get(offset + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Collects the forecasts of a snapshot and writes the file.  Add a location, then each of
+       its days, then the next location.  Every location must have the same number of days.
+    */
+    static class Builder {
+
+        // The values of one day until they are written.
+        private static class Day {
+            boolean loaded;
+            String name;
+            double temperature;
+            double windSpeed;
+            int cloudiness;
+        }
+
+        private final int mDays;
+        private final List<String> mLocations = new ArrayList<>();
+        private final List<Day> mDayValues = new ArrayList<>();
+
+        Builder(int days) {
+            mDays = days;
+        }
+
+        void addLocation(String location) {
+            mLocations.add(location);
+        }
+
+        void addDay(boolean loaded, String name, double temperature, double windSpeed,
+                    int cloudiness) {
+            Day values = new Day();
+            values.loaded = loaded;
+            values.name = name;
+            values.temperature = temperature;
+            values.windSpeed = windSpeed;
+            values.cloudiness = cloudiness;
+            mDayValues.add(values);
+        }
+
+        /* Write the snapshot to a temporary file and rename it over the old one, so a reader
+           never maps half a snapshot or finds none.
+        */
+        void write(File file, long writtenAt) throws IOException {
+            if (mDayValues.size() != mLocations.size() * mDays) {
+                throw new IllegalStateException("Every location needs " + mDays + " days");
+            }
+
+            List<byte[]> strings = new ArrayList<>();
+            int stringBytes = 0;
+            for (String location : mLocations) {
+                byte[] bytes = location.getBytes(UTF_8);
+                strings.add(bytes);
+                stringBytes += bytes.length;
+            }
+            for (Day values : mDayValues) {
+                byte[] bytes = values.name == null ? null : values.name.getBytes(UTF_8);
+                strings.add(bytes);
+                stringBytes += bytes == null ? 0 : bytes.length;
+            }
+
+            int locationsStart = HEADER_BYTES;
+            int daysStart = locationsStart + mLocations.size() * LOCATION_BYTES;
+            int stringsStart = daysStart + mDayValues.size() * DAY_BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate(stringsStart + stringBytes);
+
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(writtenAt)
+                    .putInt(mLocations.size()).putInt(mDays);
+
+            int stringOffset = stringsStart;
+            int[] offsets = new int[strings.size()];
+            for (int i = 0; i < strings.size(); i++) {
+                byte[] bytes = strings.get(i);
+                offsets[i] = bytes == null ? NO_STRING : stringOffset;
+                if (bytes != null) {
+                    buffer.position(stringOffset);
+                    buffer.put(bytes);
+                    stringOffset += bytes.length;
+                }
+            }
+
+            buffer.position(locationsStart);
+            for (int index = 0; index < mLocations.size(); index++) {
+                buffer.putInt(offsets[index]).putInt(strings.get(index).length)
+                        .putInt(daysStart + index * mDays * DAY_BYTES);
+            }
+
+            buffer.position(daysStart);
+            for (int i = 0; i < mDayValues.size(); i++) {
+                Day values = mDayValues.get(i);
+                byte[] name = strings.get(mLocations.size() + i);
+                buffer.put((byte) (values.loaded ? 1 : 0))
+                        .putDouble(values.temperature)
+                        .putDouble(values.windSpeed)
+                        .putInt(values.cloudiness)
+                        .putInt(offsets[mLocations.size() + i])
+                        .putInt(name == null ? 0 : name.length);
+            }
+
+            File directory = file.getParentFile();
+            if (directory != null && ! directory.exists() && ! directory.mkdirs()) {
+                throw new IOException("Can't create " + directory);
+            }
+            File temp = new File(file.getPath() + TEMP_SUFFIX);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(buffer.array());
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            // Renaming over the old snapshot replaces it in one step, so there is always one to
+            // open.  Only where the rename can't replace a file is the old one deleted first.
+            if (! temp.renameTo(file)) {
+                file.delete();
+                if (! temp.renameTo(file)) {
+                    temp.delete();
+                    throw new IOException("Can't rename " + temp);
+                }
+            }
+        }
+    }
+}
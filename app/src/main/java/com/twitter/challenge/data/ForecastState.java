@@ -0,0 +1,152 @@
+package com.twitter.challenge.data;
+
+import com.twitter.challenge.TemperatureConverter;
+
+/* Immutable picture of what the activity shows for the default location: the current day's values,
+ * how many future days are in, and the last error.  The repository publishes a new one through a
+ * single LiveData whenever any of it changes, and never publishes one equal to the last, so an
+ * observer is only woken for real changes.  An observer compares the new state with the one it
+ * saw before, using the changed methods, and only rebinds the parts that differ.  The error count
+ * goes up with every error reported, so the same error reported twice is still a change.  The
+ * name is the LocationRegistry's copy, so comparing the names of the same location is comparing
+ * references.
+ */
+public final class ForecastState {
+
+    private final boolean mCurrentDayLoaded;
+    private final String mName;
+    private final float mTemperatureC;
+    private final double mWindSpeed;
+    private final int mCloudiness;
+    private final int mFutureDaysLoaded;
+    private final int mFutureDays;
+    private final boolean mHaveError;
+    private final int mErrorCount;
+    private final String mErrorMessage;
+
+    ForecastState(boolean currentDayLoaded, String name, float temperatureC, double windSpeed,
+                  int cloudiness, int futureDaysLoaded, int futureDays, boolean haveError,
+                  int errorCount, String errorMessage) {
+        mCurrentDayLoaded = currentDayLoaded;
+        mName = name;
+        mTemperatureC = temperatureC;
+        mWindSpeed = windSpeed;
+        mCloudiness = cloudiness;
+        mFutureDaysLoaded = futureDaysLoaded;
+        mFutureDays = futureDays;
+        mHaveError = haveError;
+        mErrorCount = errorCount;
+        mErrorMessage = errorMessage;
+    }
+
+    public boolean isCurrentDayLoaded() {
+        return mCurrentDayLoaded;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public float getTemperature() {
+        return mTemperatureC;
+    }
+
+    public float getTemperatureFahrenheit() {
+        return TemperatureConverter.celsiusToFahrenheit(mTemperatureC);
+    }
+
+    public double getWindSpeed() {
+        return mWindSpeed;
+    }
+
+    public int getCloudiness() {
+        return mCloudiness;
+    }
+
+    public int getFutureDaysLoaded() {
+        return mFutureDaysLoaded;
+    }
+
+    public int getFutureDays() {
+        return mFutureDays;
+    }
+
+    public boolean areFutureDaysLoaded() {
+        return mFutureDaysLoaded == mFutureDays;
+    }
+
+    public boolean haveError() {
+        return mHaveError;
+    }
+
+    public int getErrorCount() {
+        return mErrorCount;
+    }
+
+    public String getErrorMessage() {
+        return mErrorMessage;
+    }
+
+    // True if the current day's views need to be bound again.  Everything differs from no state.
+    public boolean currentDayChanged(ForecastState previous) {
+        return previous == null
+                || mCurrentDayLoaded != previous.mCurrentDayLoaded
+                || ! equal(mName, previous.mName)
+                || Float.floatToIntBits(mTemperatureC)
+                        != Float.floatToIntBits(previous.mTemperatureC)
+                || Double.doubleToLongBits(mWindSpeed)
+                        != Double.doubleToLongBits(previous.mWindSpeed)
+                || mCloudiness != previous.mCloudiness;
+    }
+
+    // True if the name shown for the location changed.
+    public boolean locationChanged(ForecastState previous) {
+        return previous == null || ! equal(mName, previous.mName);
+    }
+
+    public boolean futureDaysChanged(ForecastState previous) {
+        return previous == null
+                || mFutureDaysLoaded != previous.mFutureDaysLoaded
+                || mFutureDays != previous.mFutureDays;
+    }
+
+    // True if an error was reported since the previous state.
+    public boolean errorReported(ForecastState previous) {
+        return mHaveError && (previous == null || mErrorCount != previous.mErrorCount);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (! (other instanceof ForecastState)) {
+            return false;
+        }
+        ForecastState state = (ForecastState) other;
+        return ! currentDayChanged(state) && ! futureDaysChanged(state)
+                && mHaveError == state.mHaveError
+                && mErrorCount == state.mErrorCount
+                && equal(mErrorMessage, state.mErrorMessage);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mCurrentDayLoaded ? 1 : 0;
+        hash = 31 * hash + (mName == null ? 0 : mName.hashCode());
+        hash = 31 * hash + Float.floatToIntBits(mTemperatureC);
+        long wind = Double.doubleToLongBits(mWindSpeed);
+        hash = 31 * hash + (int) (wind ^ (wind >>> 32));
+        hash = 31 * hash + mCloudiness;
+        hash = 31 * hash + mFutureDaysLoaded;
+        hash = 31 * hash + mFutureDays;
+        hash = 31 * hash + (mHaveError ? 1 : 0);
+        hash = 31 * hash + mErrorCount;
+        return 31 * hash + (mErrorMessage == null ? 0 : mErrorMessage.hashCode());
+    }
+
+    // Objects.equals needs API 19.
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,106 @@
+package com.twitter.challenge.data;
+
+/* Column store for the downloaded forecast.  Each metric is kept in its own primitive array
+ * indexed by day, so a getter is a single array read and a stored day costs no boxed fields or
+ * nested objects.  WeatherData objects are only used while parsing, their values are copied into
+ * the columns by put().  Only the metrics the app shows are stored, the ones the lean decoder
+ * reads.  Values missing from a download read as NaN for decimal metrics and MISSING for whole
+ * number metrics.  Each day's location name is interned in the LocationRegistry under the
+ * location path given to put(), so the name the days repeat is stored once.  Not thread safe on
+ * its own: LocationForecast shares a store between threads only once it will not
+ * be changed any more, and changes a copy instead.
+ */
+class ForecastStore {
+
+    static final int MISSING = Integer.MIN_VALUE;
+
+    private final boolean[] mLoaded;
+    private final String[] mName;
+    private final double[] mTemperature;
+    private final double[] mWindSpeed;
+    private final int[] mCloudiness;
+
+    ForecastStore(int days) {
+        mLoaded = new boolean[days];
+        mName = new String[days];
+        mTemperature = new double[days];
+        mWindSpeed = new double[days];
+        mCloudiness = new int[days];
+    }
+
+    private ForecastStore(ForecastStore other) {
+        mLoaded = other.mLoaded.clone();
+        mName = other.mName.clone();
+        mTemperature = other.mTemperature.clone();
+        mWindSpeed = other.mWindSpeed.clone();
+        mCloudiness = other.mCloudiness.clone();
+    }
+
+    // A new store with the same values, that can be changed without affecting this one.
+    ForecastStore copy() {
+        return new ForecastStore(this);
+    }
+
+    // Copy the values of one downloaded day of the location at this path into the columns.
+    void put(int day, String location, WeatherData weatherData) {
+        Weather weather = weatherData.getWeather();
+        Wind wind = weatherData.getWind();
+        Clouds clouds = weatherData.getClouds();
+
+        mName[day] = LocationRegistry.intern(location, weatherData.getName());
+        mTemperature[day] = weather == null ? Double.NaN : valueOf(weather.getTemp());
+        mWindSpeed[day] = wind == null ? Double.NaN : valueOf(wind.getSpeed());
+        mCloudiness[day] = clouds == null ? MISSING : valueOf(clouds.getCloudiness());
+        mLoaded[day] = true;
+    }
+
+    // Store the values of one day of the location at this path read back from a snapshot.
+    void put(int day, String location, String name, double temperature, double windSpeed,
+             int cloudiness) {
+        mName[day] = LocationRegistry.intern(location, name);
+        mTemperature[day] = temperature;
+        mWindSpeed[day] = windSpeed;
+        mCloudiness[day] = cloudiness;
+        mLoaded[day] = true;
+    }
+
+    int getDays() {
+        return mLoaded.length;
+    }
+
+    boolean isLoaded(int day) {
+        return day >= 0 && day < mLoaded.length && mLoaded[day];
+    }
+
+    String getName(int day) {
+        return mName[day];
+    }
+
+    double getTemperature(int day) {
+        return mTemperature[day];
+    }
+
+    // Copy the temperature column into an array of at least getDays() values.  Days that are not
+    // loaded read as NaN.
+    void getTemperatures(float[] temperatures) {
+        for (int day = 0; day < mTemperature.length; day++) {
+            temperatures[day] = mLoaded[day] ? (float) mTemperature[day] : Float.NaN;
+        }
+    }
+
+    double getWindSpeed(int day) {
+        return mWindSpeed[day];
+    }
+
+    int getCloudiness(int day) {
+        return mCloudiness[day];
+    }
+
+    private static double valueOf(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static int valueOf(Integer value) {
+        return value == null ? MISSING : value;
+    }
+}
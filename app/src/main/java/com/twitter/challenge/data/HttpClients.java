@@ -0,0 +1,59 @@
+package com.twitter.challenge.data;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/* The HTTP client configuration of the app.  One client is shared by every Repository so they
+ * all use the same connection pool: idle connections are kept alive between loads, so a repeat
+ * load reuses a warm TLS connection, and over HTTP/2 the requests for all the endpoints of a
+ * location are multiplexed on one connection.  OkHttp asks for gzip and unzips the response on
+ * its own.  The timeouts can be changed, the new client still shares the pool.  Every call is
+ * timed by the app's LoadMetrics.
+ */
+final class HttpClients {
+
+    static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000L;
+    static final long DEFAULT_READ_TIMEOUT_MILLIS = 15 * 1000L;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpClient sShared;
+
+    private HttpClients() {
+    }
+
+    // The client shared by the whole app, created on first use with the default timeouts.
+    static synchronized OkHttpClient getShared() {
+        if (sShared == null) {
+            sShared = create(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+        return sShared;
+    }
+
+    /* Change the timeouts of the shared client.  Clients handed out before keep their timeouts,
+       but all of them share the connection pool.
+    */
+    static synchronized void setTimeouts(long connectTimeoutMillis, long readTimeoutMillis) {
+        sShared = getShared().newBuilder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    // Build a client with its own connection pool.
+    static OkHttpClient create(long connectTimeoutMillis, long readTimeoutMillis) {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES,
+                        TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(LoadMetrics.getShared())
+                .build();
+    }
+}
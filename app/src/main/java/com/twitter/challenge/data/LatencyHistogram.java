@@ -0,0 +1,88 @@
+package com.twitter.challenge.data;
+
+import java.util.Arrays;
+
+/* Histogram of durations in microseconds with logarithmic buckets, so recording is a few shifts
+ * and an array increment, and the memory used does not grow with the number of samples.  Values
+ * below 16 get a bucket each; above that every power of two is split into 8 buckets, so a
+ * percentile is within 12.5% of the real value.  Percentiles report the upper bound of the
+ * bucket they fall in.
+ */
+class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Powers of two from 16 (2^4) up to 2^62.
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount = 0;
+    private long mSum = 0;
+    private long mMax = 0;
+
+    synchronized void record(long micros) {
+        long value = Math.max(0, micros);
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    synchronized long getCount() {
+        return mCount;
+    }
+
+    synchronized long getMax() {
+        return mMax;
+    }
+
+    synchronized double getMean() {
+        return mCount == 0 ? Double.NaN : (double) mSum / mCount;
+    }
+
+    /* Return the value below which the given percentile (0 to 100) of the samples fall, or -1 if
+       nothing was recorded.
+    */
+    synchronized long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * mCount);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mCounts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,353 @@
+package com.twitter.challenge.data;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+/* Timings and counters of the loading pipeline, per endpoint.  As an OkHttp EventListener
+ * factory it times the phases of every call: DNS lookup, connect, TLS handshake, time to first
+ * byte and reading the body, and counts the body bytes.  Decoding is timed on its own on every
+ * path: downloaded documents, documents of a batch, which are decoded as their bytes stream in,
+ * and cached copies read from disk.  The repository reports cache hits and misses, and the loader
+ * reports every call made for a retry, with its attempt number.  Timings are kept in histograms,
+ * in microseconds, that can be queried for percentiles or dumped to a file.  One instance is
+ * shared by the whole app.
+ */
+public class LoadMetrics implements EventListener.Factory {
+
+    // The timed phases of a load.
+    public enum Phase {
+        DNS, CONNECT, TLS, TIME_TO_FIRST_BYTE, BODY, CALL, CACHE_READ, DECODE
+    }
+
+    private static final double[] DUMP_PERCENTILES = {50, 95, 99};
+    private static final String DOCUMENT_SUFFIX = ".json";
+
+    private static LoadMetrics sShared;
+
+    private final Map<String, EndpointMetrics> mEndpoints = new TreeMap<>();
+    // Answers queries for endpoints nothing was recorded for.
+    private final EndpointMetrics mNoMetrics = new EndpointMetrics();
+
+    // Everything recorded for one endpoint.  Counters are guarded by the object's lock.
+    private static class EndpointMetrics {
+        final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+        long bytesReceived;
+        int calls;
+        int failures;
+        int retries;
+        int cacheHits;
+        int cacheStale;
+        int cacheMisses;
+
+        EndpointMetrics() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        void record(Phase phase, long startNanos) {
+            recordNanos(phase, System.nanoTime() - startNanos);
+        }
+
+        void recordNanos(Phase phase, long nanos) {
+            histograms[phase.ordinal()].record(nanos / 1000);
+        }
+    }
+
+    // The metrics shared by the whole app, created on first use.
+    static synchronized LoadMetrics getShared() {
+        if (sShared == null) {
+            sShared = new LoadMetrics();
+        }
+        return sShared;
+    }
+
+    // Calls are recorded under their endpoint ID, the path of the document without the slash
+    // and the suffix.
+    @Override
+    public EventListener create(Call call) {
+        String endpoint = call.request().url().encodedPath();
+        if (endpoint.startsWith("/")) {
+            endpoint = endpoint.substring(1);
+        }
+        if (endpoint.endsWith(DOCUMENT_SUFFIX)) {
+            endpoint = endpoint.substring(0, endpoint.length() - DOCUMENT_SUFFIX.length());
+        }
+        return new CallListener(getEndpoint(endpoint));
+    }
+
+    /* Record a read of the disk cache that took the given time.  A fresh entry is a hit, a stale
+       one still has to be revalidated, and no entry is a miss.
+    */
+    void recordCacheRead(String endpoint, WeatherDataCache.Entry entry, long now, long startNanos) {
+        EndpointMetrics metrics = getEndpoint(endpoint);
+        synchronized (metrics) {
+            if (entry == null) {
+                metrics.cacheMisses++;
+            } else if (entry.isFresh(now)) {
+                metrics.cacheHits++;
+            } else {
+                metrics.cacheStale++;
+            }
+        }
+        if (entry != null) {
+            metrics.record(Phase.CACHE_READ, startNanos);
+            metrics.recordNanos(Phase.DECODE, entry.decodeNanos);
+        }
+    }
+
+    // Record the decoding of a downloaded document that started at startNanos.
+    void recordDecode(String endpoint, long startNanos) {
+        getEndpoint(endpoint).record(Phase.DECODE, startNanos);
+    }
+
+    /* Record that a load is being made for the given attempt, as counted by the RetryPolicy; the
+       first attempt is 1 and every later one is a retry.
+    */
+    void recordAttempt(String endpoint, int attempt) {
+        if (attempt <= 1) {
+            return;
+        }
+        EndpointMetrics metrics = getEndpoint(endpoint);
+        synchronized (metrics) {
+            metrics.retries++;
+        }
+    }
+
+    public synchronized List<String> getEndpoints() {
+        return new ArrayList<>(mEndpoints.keySet());
+    }
+
+    // Return the given percentile (0 to 100) of a phase in microseconds, or -1 if there is none.
+    public long getPercentileMicros(String endpoint, Phase phase, double percentile) {
+        return find(endpoint).histograms[phase.ordinal()].getPercentile(percentile);
+    }
+
+    public long getCount(String endpoint, Phase phase) {
+        return find(endpoint).histograms[phase.ordinal()].getCount();
+    }
+
+    public long getBytesReceived(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.bytesReceived;
+        }
+    }
+
+    public int getCalls(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.calls;
+        }
+    }
+
+    public int getFailures(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.failures;
+        }
+    }
+
+    public int getRetries(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.retries;
+        }
+    }
+
+    public int getCacheHits(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.cacheHits;
+        }
+    }
+
+    public int getCacheStale(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.cacheStale;
+        }
+    }
+
+    public int getCacheMisses(String endpoint) {
+        EndpointMetrics metrics = find(endpoint);
+        synchronized (metrics) {
+            return metrics.cacheMisses;
+        }
+    }
+
+    /* Write a text report: one line of counters per endpoint, then one line per phase that has
+       samples with its count, mean, percentiles and maximum in microseconds.
+    */
+    public void dump(Writer writer) throws IOException {
+        for (String endpoint : getEndpoints()) {
+            EndpointMetrics metrics = find(endpoint);
+            synchronized (metrics) {
+                writer.write(endpoint + " calls=" + metrics.calls
+                        + " failures=" + metrics.failures
+                        + " retries=" + metrics.retries
+                        + " bytes=" + metrics.bytesReceived
+                        + " cacheHits=" + metrics.cacheHits
+                        + " cacheStale=" + metrics.cacheStale
+                        + " cacheMisses=" + metrics.cacheMisses + "\n");
+            }
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = metrics.histograms[phase.ordinal()];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                StringBuilder line = new StringBuilder("  ").append(phase)
+                        .append(" count=").append(histogram.getCount())
+                        .append(" mean=").append(Math.round(histogram.getMean()));
+                for (double percentile : DUMP_PERCENTILES) {
+                    line.append(" p").append((int) percentile).append('=')
+                            .append(histogram.getPercentile(percentile));
+                }
+                line.append(" max=").append(histogram.getMax()).append('\n');
+                writer.write(line.toString());
+            }
+        }
+        writer.flush();
+    }
+
+    public void dump(File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            dump(writer);
+        }
+    }
+
+    private synchronized EndpointMetrics find(String endpoint) {
+        EndpointMetrics metrics = mEndpoints.get(endpoint);
+        return metrics == null ? mNoMetrics : metrics;
+    }
+
+    private synchronized EndpointMetrics getEndpoint(String endpoint) {
+        EndpointMetrics metrics = mEndpoints.get(endpoint);
+        if (metrics == null) {
+            metrics = new EndpointMetrics();
+            mEndpoints.put(endpoint, metrics);
+        }
+        return metrics;
+    }
+
+    // Times the phases of one call.  OkHttp creates one per call, so no locking is needed for
+    // the start times.
+    private static class CallListener extends EventListener {
+        private final EndpointMetrics mMetrics;
+        private long mCallStart;
+        private long mDnsStart;
+        private long mConnectStart;
+        private long mSecureConnectStart;
+        private long mRequestStart;
+        private long mBodyStart;
+        private boolean mFailed;
+
+        CallListener(EndpointMetrics metrics) {
+            mMetrics = metrics;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            mCallStart = System.nanoTime();
+            synchronized (mMetrics) {
+                mMetrics.calls++;
+            }
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            mDnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            mMetrics.record(Phase.DNS, mDnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            mConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            mSecureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            mMetrics.record(Phase.TLS, mSecureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                               Protocol protocol) {
+            mMetrics.record(Phase.CONNECT, mConnectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            mRequestStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if (mRequestStart != 0) {
+                mMetrics.record(Phase.TIME_TO_FIRST_BYTE, mRequestStart);
+            }
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            // Not modified is a success, anything else that is not 2xx failed.
+            mFailed = response.code() >= 400;
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            mBodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            mMetrics.record(Phase.BODY, mBodyStart);
+            synchronized (mMetrics) {
+                mMetrics.bytesReceived += byteCount;
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finished(mFailed);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            finished(true);
+        }
+
+        private void finished(boolean failed) {
+            mMetrics.record(Phase.CALL, mCallStart);
+            synchronized (mMetrics) {
+                if (failed) {
+                    mMetrics.failures++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.twitter.challenge.data;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* The threads that run downloads, shared by every Repository in the process so loads and retries
+ * reuse threads instead of starting new ones.  The pool is bounded by the parallelism, which can
+ * be changed at any time, and its threads stop after being idle for a while so an app that is not
+ * loading anything keeps none.  Each Repository still bounds its own requests with its
+ * FetchScheduler.  A single timer thread runs work that has to wait, such as retries, so no
+ * loader thread sleeps.  Every job is run inside a guard that prints what it throws, so a failing
+ * job neither kills its thread nor disappears without a trace.
+ */
+final class LoaderExecutor {
+
+    static final int DEFAULT_PARALLELISM = 6;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+    private static ThreadPoolExecutor sExecutor;
+    private static ScheduledThreadPoolExecutor sTimer;
+
+    private LoaderExecutor() {
+    }
+
+    // The shared executor, created on first use with the default parallelism.
+    static synchronized Executor get() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                    IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "Loader Thread " + sThreadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }) {
+                @Override
+                public void execute(Runnable command) {
+                    super.execute(guard(command));
+                }
+            };
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    // Run the work on the timer thread after the delay.  The work should be short, like
+    // submitting a job.  The future cancels it.
+    static synchronized ScheduledFuture<?> schedule(Runnable work, long delayMillis) {
+        if (sTimer == null) {
+            sTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "Loader Timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sTimer.setKeepAliveTime(IDLE_THREAD_SECONDS, TimeUnit.SECONDS);
+            sTimer.allowCoreThreadTimeOut(true);
+        }
+        // The timer keeps what a job throws in its future, which nobody reads, so guard it too.
+        return sTimer.schedule(guard(work), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Drop cancelled work from the timer's queue, so it no longer holds on to what it refers to.
+    static synchronized void purgeTimer() {
+        if (sTimer != null) {
+            sTimer.purge();
+        }
+    }
+
+    // The work, with anything it throws printed instead of ending its thread.
+    static Runnable guard(Runnable work) {
+        return () -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        };
+    }
+
+    // Change the number of threads that run downloads at the same time.
+    static synchronized void setParallelism(int parallelism) {
+        int threads = Math.max(1, parallelism);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) get();
+        // The core size can't be more than the maximum size, so grow and shrink in that order.
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    static synchronized int getParallelism() {
+        return ((ThreadPoolExecutor) get()).getMaximumPoolSize();
+    }
+}
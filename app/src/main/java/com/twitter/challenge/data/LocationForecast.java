@@ -0,0 +1,290 @@
+package com.twitter.challenge.data;
+
+import com.twitter.challenge.RunningStatistics;
+import com.twitter.challenge.TemperatureConverter;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/* The forecast of one location: the current day plus a number of future days, and the running
+ * temperature statistics of the future days.  The location's endpoints live under its own path
+ * on the server, the default location (an empty path) uses the top level documents.  Days can be
+ * restored from a snapshot of an earlier launch; they are shown like the others but still need to
+ * be loaded.  Days arrive from several loader threads while the main thread reads them, so the
+ * days and their statistics are kept in a Days object that is never changed once published.  A
+ * writer copies the current one, changes the copy and publishes it with a compare and set,
+ * starting over if another writer got there first.  A reader gets the current Days with one
+ * atomic read, so reads never block or wait for a writer, and all the values a reader takes from
+ * one Days belong together.
+ */
+class LocationForecast {
+
+    private static final String CURRENT_ENDPOINT = "current";
+    private static final String FUTURE_ENDPOINT = "future_";
+
+    /* Every day of the location at one point in time.  Only changed while it is a private copy,
+       before the compare and set that publishes it, which also makes its values visible to the
+       threads that read it.
+    */
+    private static final class Days {
+        ForecastStore store;
+        boolean[] fromSnapshot;
+        RunningStatistics temperatureStatisticsC;
+        int futureDaysLoaded;
+        float standardDeviationC;
+
+        Days(int days) {
+            store = new ForecastStore(days);
+            fromSnapshot = new boolean[days];
+            temperatureStatisticsC = new RunningStatistics();
+            standardDeviationC = -1.0f;
+        }
+
+        private Days(Days other) {
+            store = other.store.copy();
+            fromSnapshot = other.fromSnapshot.clone();
+            temperatureStatisticsC = new RunningStatistics();
+            temperatureStatisticsC.merge(other.temperatureStatisticsC);
+            futureDaysLoaded = other.futureDaysLoaded;
+            standardDeviationC = other.standardDeviationC;
+        }
+
+        Days copy() {
+            return new Days(this);
+        }
+
+        /* Each future day's temperature is added to the running statistics as it arrives, and once
+           every future day is in the standard deviation is stored.
+        */
+        void updateStatistics(int day, boolean newDay, int futureDays) {
+            if (day > 0) {
+                if (newDay) {
+                    futureDaysLoaded++;
+                    temperatureStatisticsC.add(store.getTemperature(day));
+                } else {
+                    // A revalidated day replaced its cached copy.  Samples can't be taken back out
+                    // of the statistics, so start over from the stored days.
+                    temperatureStatisticsC.clear();
+                    for (int futureDay = 1; futureDay <= futureDays; futureDay++) {
+                        if (store.isLoaded(futureDay)) {
+                            temperatureStatisticsC.add(store.getTemperature(futureDay));
+                        }
+                    }
+                }
+                if (futureDaysLoaded == futureDays) {
+                    standardDeviationC = (float) temperatureStatisticsC.getStandardDeviation();
+                }
+            }
+        }
+
+        // True if the day has not been loaded, or is only shown from a snapshot.
+        boolean needsLoad(int day) {
+            return ! store.isLoaded(day) || fromSnapshot[day];
+        }
+    }
+
+    // A change made to a private copy of the days.  Returns false if nothing had to change.
+    private interface Change {
+        boolean apply(Days days);
+    }
+
+    private final String mLocation;
+    private final int mFutureDays;
+    private final AtomicReference<Days> mDays;
+    private volatile boolean mVisible;
+
+    LocationForecast(String location, int futureDays, boolean visible) {
+        mLocation = location;
+        mFutureDays = futureDays;
+        mDays = new AtomicReference<>(new Days(futureDays + 1));
+        mVisible = visible;
+    }
+
+    String getLocation() {
+        return mLocation;
+    }
+
+    int getFutureDays() {
+        return mFutureDays;
+    }
+
+    boolean isVisible() {
+        return mVisible;
+    }
+
+    void setVisible(boolean visible) {
+        mVisible = visible;
+    }
+
+    // Apply the change to a copy of the current days and publish it, unless another thread
+    // published new days first, in which case the change is applied to those.
+    private void update(Change change) {
+        while (true) {
+            Days current = mDays.get();
+            Days next = current.copy();
+            if (! change.apply(next) || mDays.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    // Store the data for one day.
+    void put(int day, WeatherData weatherData) {
+        update(days -> {
+            boolean newDay = ! days.store.isLoaded(day);
+            days.store.put(day, mLocation, weatherData);
+            days.fromSnapshot[day] = false;
+            days.updateStatistics(day, newDay, mFutureDays);
+            return true;
+        });
+    }
+
+    /* Fill the days that have not been loaded yet with the ones stored in the snapshot, if it has
+       this location.
+    */
+    void restore(ForecastSnapshot snapshot) {
+        int index = snapshot.indexOf(mLocation);
+        if (index < 0) {
+            return;
+        }
+        update(days -> {
+            boolean changed = false;
+            int count = Math.min(snapshot.getDays(), days.store.getDays());
+            for (int day = 0; day < count; day++) {
+                if (! days.store.isLoaded(day) && snapshot.isLoaded(index, day)) {
+                    days.store.put(day, mLocation, snapshot.getName(index, day),
+                            snapshot.getTemperature(index, day),
+                            snapshot.getWindSpeed(index, day), snapshot.getCloudiness(index, day));
+                    days.fromSnapshot[day] = true;
+                    days.updateStatistics(day, true, mFutureDays);
+                    changed = true;
+                }
+            }
+            return changed;
+        });
+    }
+
+    // Add this location and all its days to a snapshot.
+    void addTo(ForecastSnapshot.Builder builder) {
+        ForecastStore store = mDays.get().store;
+        builder.addLocation(mLocation);
+        for (int day = 0; day < store.getDays(); day++) {
+            boolean loaded = store.isLoaded(day);
+            builder.addDay(loaded, loaded ? store.getName(day) : null,
+                    loaded ? store.getTemperature(day) : Double.NaN,
+                    loaded ? store.getWindSpeed(day) : Double.NaN,
+                    loaded ? store.getCloudiness(day) : ForecastStore.MISSING);
+        }
+    }
+
+    // Return the endpoint string for the URI.  Looks like either "current" or "future_n" where
+    // n is the number of days in the future, under the location's path if it has one.
+    String getEndPoint(int day) {
+        String prefix = mLocation.isEmpty() ? "" : mLocation + "/";
+        if (day == 0) {
+            return prefix + CURRENT_ENDPOINT;
+        } else {
+            return prefix + FUTURE_ENDPOINT + day;
+        }
+    }
+
+    // The state to show for this location, with every value read from the same days.
+    ForecastState getState(boolean haveError, int errorCount, String errorMessage) {
+        Days days = mDays.get();
+        ForecastStore store = days.store;
+        boolean loaded = store.isLoaded(0);
+        return new ForecastState(loaded,
+                loaded ? store.getName(0) : null,
+                loaded ? (float) store.getTemperature(0) : -1000f,
+                loaded ? store.getWindSpeed(0) : -1, loaded ? store.getCloudiness(0) : -1,
+                days.futureDaysLoaded, mFutureDays, haveError, errorCount, errorMessage);
+    }
+
+    boolean isLoaded(int day) {
+        return mDays.get().store.isLoaded(day);
+    }
+
+    // True if the day has not been loaded, or is only shown from a snapshot.
+    boolean needsLoad(int day) {
+        return mDays.get().needsLoad(day);
+    }
+
+    // True once every day has been loaded in this run.
+    boolean isComplete() {
+        return isComplete(mFutureDays);
+    }
+
+    // True once every day up to and including the last day has been loaded in this run.
+    boolean isComplete(int lastDay) {
+        Days days = mDays.get();
+        for (int day = 0; day <= lastDay && day < days.store.getDays(); day++) {
+            if (days.needsLoad(day)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isCurrentDayLoaded() {
+        return mDays.get().store.isLoaded(0);
+    }
+
+    int getFutureDaysLoaded() {
+        return mDays.get().futureDaysLoaded;
+    }
+
+    String getName(int day) {
+        ForecastStore store = mDays.get().store;
+        if (! store.isLoaded(day)){
+            return "";
+        }
+        return store.getName(day);
+    }
+
+    double getTemperature(int day){
+        ForecastStore store = mDays.get().store;
+        if (! store.isLoaded(day)){
+            return -1000L;
+        }
+        return store.getTemperature(day);
+    }
+
+    // Temperatures of every day in Celsius, NaN for days not loaded yet.
+    float[] getTemperatures(){
+        ForecastStore store = mDays.get().store;
+        float[] temperatures = new float[store.getDays()];
+        store.getTemperatures(temperatures);
+        return temperatures;
+    }
+
+    // Temperatures of every day in Fahrenheit, converted in one bulk pass.
+    float[] getTemperaturesFahrenheit(){
+        float[] temperatures = getTemperatures();
+        TemperatureConverter.celsiusToFahrenheit(temperatures, temperatures);
+        return temperatures;
+    }
+
+    double getWindSpeed(int day){
+        ForecastStore store = mDays.get().store;
+        if (! store.isLoaded(day)){
+            return -1L;
+        }
+        return store.getWindSpeed(day);
+    }
+
+    int getCloudiness (int day){
+        ForecastStore store = mDays.get().store;
+        if (! store.isLoaded(day)){
+            return -1;
+        }
+        return store.getCloudiness(day);
+    }
+
+    float getStandardDeviationCelsius(){
+        return mDays.get().standardDeviationC;
+    }
+
+    // Standard deviation of the future days loaded so far, or NaN until there are two of them.
+    float getRunningStandardDeviationCelsius(){
+        return (float) mDays.get().temperatureStatisticsC.getStandardDeviation();
+    }
+}
@@ -0,0 +1,46 @@
+package com.twitter.challenge.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* The name of every location path of the Repository, "" for the default location, held once.
+ * Every endpoint of a location repeats the same name, and each download decodes a new copy of
+ * it, so the forecast stores the copy kept here instead: the days of a location share one String,
+ * and the decoded ones are garbage right away.  Only the latest name of a path is kept, so a
+ * location that is renamed replaces its entry, and the old name lives only as long as the days
+ * that still show it.  Days already stored keep their own name, so a published day and its name
+ * stay together.  Removed locations are forgotten.
+ */
+final class LocationRegistry {
+
+    // The latest name of each location path.
+    private static final Map<String, String> sNames = new HashMap<>();
+
+    private LocationRegistry() {
+    }
+
+    /* Return the kept copy of the name of the location at this path.  A name that differs from
+       the one kept replaces it.  Returns null for a null name.
+    */
+    static synchronized String intern(String location, String name) {
+        if (name == null) {
+            return null;
+        }
+        String kept = sNames.get(location);
+        if (name.equals(kept)) {
+            return kept;
+        }
+        sNames.put(location, name);
+        return name;
+    }
+
+    // Forget the name of a location that is no longer managed.
+    static synchronized void remove(String location) {
+        sNames.remove(location);
+    }
+
+    // Number of location paths with a name.
+    static synchronized int size() {
+        return sNames.size();
+    }
+}
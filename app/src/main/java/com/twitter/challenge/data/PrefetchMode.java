@@ -0,0 +1,11 @@
+package com.twitter.challenge.data;
+
+/* When the future days of the forecast are downloaded.  The current day is always loaded right
+ * away; the future days are only needed for the standard deviation.
+ */
+public enum PrefetchMode {
+    // Load the future days at startup, with the current day.  The default.
+    EAGER,
+    // Load the future days once the UI shows it is about to need them.
+    ON_DEMAND
+}
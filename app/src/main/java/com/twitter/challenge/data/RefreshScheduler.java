@@ -0,0 +1,53 @@
+package com.twitter.challenge.data;
+
+/* Plans the background refreshes of the forecast.  Refreshes run in batches: a batch is due a
+ * little before the first cached endpoint goes stale, and it takes along every endpoint that
+ * would go stale within the batch window, so several expiries cost one radio wakeup instead of
+ * one each.  When batches keep finding that nothing changed on the server, its data is updated
+ * less often than the cache expires, so the time between batches doubles up to a maximum.  The
+ * first batch that brings new data resets it.  Times are in milliseconds and passed in.
+ */
+class RefreshScheduler {
+
+    private final long mLeadMillis;
+    private final long mBatchWindowMillis;
+    private final long mMinDelayMillis;
+    private final long mMaxDelayMillis;
+    private int mUnchangedBatches = 0;
+
+    /* lead is how long before an expiry the batch runs, batchWindow how much further ahead it
+       looks for expiries to take along.  Batches are at least minDelay and at most maxDelay apart.
+    */
+    RefreshScheduler(long leadMillis, long batchWindowMillis, long minDelayMillis,
+                     long maxDelayMillis) {
+        mLeadMillis = leadMillis;
+        mBatchWindowMillis = batchWindowMillis;
+        mMinDelayMillis = minDelayMillis;
+        mMaxDelayMillis = Math.max(minDelayMillis, maxDelayMillis);
+    }
+
+    // A batch refreshes the endpoints whose cached copy is stale this long from now.
+    long getRefreshAheadMillis() {
+        return mLeadMillis + mBatchWindowMillis;
+    }
+
+    // Record whether the last batch brought any new data.
+    synchronized void onBatchFinished(boolean changed) {
+        mUnchangedBatches = changed ? 0 : Math.min(mUnchangedBatches + 1, 30);
+    }
+
+    /* Return how long to wait for the next batch, given the earliest time a cached endpoint goes
+       stale.  Without backoff that is the lead time before the expiry.
+    */
+    synchronized long getNextDelay(long now, long earliestExpiry) {
+        long delay = earliestExpiry - mLeadMillis - now;
+        long backoff = mUnchangedBatches == 0 ? 0
+                : Math.min(mMaxDelayMillis, mMinDelayMillis << mUnchangedBatches);
+        delay = Math.max(delay, backoff);
+        return Math.min(mMaxDelayMillis, Math.max(mMinDelayMillis, delay));
+    }
+
+    synchronized int getUnchangedBatches() {
+        return mUnchangedBatches;
+    }
+}
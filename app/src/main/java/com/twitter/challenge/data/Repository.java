@@ -1,246 +1,928 @@
 package com.twitter.challenge.data;
 
-import android.os.Handler;
-import android.os.HandlerThread;
-
 import androidx.lifecycle.MutableLiveData;
 
-import com.twitter.challenge.StandardDeviationCalculator;
+import com.squareup.moshi.Moshi;
+import com.twitter.challenge.RunningStatistics;
+import com.twitter.challenge.SlidingWindowStatistics;
 import com.twitter.challenge.TemperatureConverter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-import okhttp3.ResponseBody;
-import retrofit2.Call;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.moshi.MoshiConverterFactory;
+import okhttp3.OkHttpClient;
 
-/* This class downloads and stores weather data from internet. Updates LiveData fields indicating
- * download status and errors.  Provides numerous getters for specific data needed for the app.
- * In case of an error it can be restarted at the point of the error.
+/* This class downloads and stores weather data from internet for every location, and publishes
+ * the state of the default one through LiveData.  Provides getters for the data the app needs.
   */
 class Repository {
 
-    private WeatherDataEndpointApi mEndpointApi;
-    private List<WeatherData> mWeatherDataList = new ArrayList<>();
-    private float mStandardDeviationC = -1.0f;
-    private float mStandardDeviationF = -1.0f;
-    private final MutableLiveData<Boolean> mCurrentDayLoaded = new MutableLiveData<>();
-    private final MutableLiveData<Integer> mFutureDaysCount = new MutableLiveData<>();
-    private final MutableLiveData<Boolean> mHaveError = new MutableLiveData<>();
+    // Downloads kept across launches.  Cached days are published right away, stale ones are
+    // requested conditionally, so a day that has not changed costs no body and no parsing.
+    private final WeatherDataCache mCache;
+    private final EndpointLoader mLoader;
+    // Every download goes through it.  It bounds the requests in flight, runs visible locations
+    // and the current day first, never runs the same endpoint twice at once, and cancels the work
+    // of locations that are removed.
+    private final FetchScheduler mScheduler;
+    private final LoadMetrics mMetrics = LoadMetrics.getShared();
+    // A day that fails is retried in the background with a growing delay while the other days
+    // keep arriving.  Its error is only shown once its retries run out.
+    private final RetryPolicy mRetryPolicy;
+    private final File mHistoryDirectory;
+    // Each new current temperature of a location, kept across launches for long range statistics,
+    // and the last day of them in memory, with rolling aggregates updated as they arrive.
+    private final Map<String, TemperatureHistory> mHistories = new HashMap<>();
+    private final Map<String, SlidingWindowStatistics> mRecentTemperatures = new HashMap<>();
+    // Quantile sketches of every downloaded temperature and wind speed, for percentiles over
+    // every session.
+    private final ForecastSketches mSketches;
+    // Every location's days, written once a location is complete.  The next launch maps it and
+    // shows its days before the cache is read or anything is downloaded.
+    private final File mSnapshotFile;
+    // Held while the snapshot is written, so writers take turns without holding up publishing.
+    private final Object mSnapshotLock = new Object();
+    // Null until a loader thread has mapped it, and if there is none.
+    private volatile ForecastSnapshot mSnapshot;
+    // Revalidates the cached endpoints in batches shortly before they go stale, so the data shown
+    // and the cache the next launch starts from are usually warm.
+    private final RefreshScheduler mRefreshScheduler;
+    private int mBodiesAtLastRefresh = 0;
+    // Refreshes and retries waiting on the timer, cancelled by close().  Guards mClosed changing.
+    private final List<ScheduledFuture<?>> mTimerJobs = new ArrayList<>();
+    private volatile boolean mClosed = false;
+    // Replaced, never changed, when a location is added or removed, so reads need no lock.
+    private final AtomicReference<Map<String, LocationForecast>> mLocations =
+            new AtomicReference<>(Collections.<String, LocationForecast>emptyMap());
+    private final LocationForecast mNoForecast = new LocationForecast(DEFAULT_LOCATION, 0, false);
+    private final int mFutureDays;
+    private final long mCreatedAt = System.currentTimeMillis();
+    // In ON_DEMAND mode only the current day is loaded at first, and the future days wait until
+    // the UI says it is about to need them.
+    private volatile PrefetchMode mPrefetchMode;
+    private final AtomicBoolean mFutureDaysWanted = new AtomicBoolean();
+    private volatile long mFutureDaysWantedAt = -1;
+    // Endpoints of the future days left out of loadData, each counted once however often it is
+    // left out again.
+    private final Set<String> mDeferredEndPoints =
+            Collections.synchronizedSet(new HashSet<String>());
+    private int mFailedLoads = 0;
+    private final MutableLiveData<ForecastState> mState = new MutableLiveData<>();
+    // States posted in a burst reach the main thread as one dispatch of the latest, since
+    // LiveData only keeps the last value posted.
+    private ForecastState mLastState;
+    private boolean mHaveError = false;
+    private int mErrorCount = 0;
     private String mErrorMessage;
-    private HandlerThread mLoadHandlerThread;
-    private List<Float> mTempsC = new ArrayList<>();
-    private List<Float> mTempsF = new ArrayList<>();
-    private static final String CURRENT_ENDPOINT = "current";
-    private static final String FUTURE_ENDPOINT = "future_";
+    static final String DEFAULT_LOCATION = "";
     private static final int FUTURE_DAYS = 5;
+    private static final int VISIBLE_PRIORITY = 0;
+    private static final int BACKGROUND_PRIORITY = 1;
+    private static final int DEFAULT_MAX_CONCURRENT_LOADS = FUTURE_DAYS + 1;
+    private static final long CURRENT_TTL_MILLIS = 10 * 60 * 1000L;
+    private static final long FUTURE_TTL_MILLIS = 60 * 60 * 1000L;
+    private static final long MAX_CACHE_BYTES = 256 * 1024L;
+    private static final String SNAPSHOT_FILE = "forecast.snapshot";
+    // A snapshot older than the longest time to live has no day that is still current.
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = FUTURE_TTL_MILLIS;
+    private static final String SKETCHES_FILE = "sketches.bin";
+    // Fewer days than this are not worth a batch request.
+    private static final int MIN_BATCH_DAYS = 2;
+    private static final String BATCH_KEY = "batch ";
+    private static final String HISTORY_SUFFIX = "-history";
+    private static final String HISTORY_FILE_SUFFIX = ".log";
+    // The rolling window of observed temperatures kept in memory, and its percentile bins.
+    private static final long RECENT_WINDOW_MILLIS = TemperatureHistory.DAY_MILLIS;
+    private static final double RECENT_BIN_MIN_CELSIUS = -100;
+    private static final double RECENT_BIN_MAX_CELSIUS = 70;
+    private static final double RECENT_BIN_WIDTH_CELSIUS = 0.1;
     private static final String BASE_URL =  "https://twitter-code-challenge.s3.amazonaws.com/";
+    // The static host has no batch.json, so asking it would only delay the days by a failed
+    // request.  Set this for a server that serves batches.
+    private static final boolean BATCH_SUPPORTED = false;
+    // Loads in flight in the whole process, keyed by endpoint.  Every instance uses the same
+    // server, so any of them can use the result of another's call.
+    private static final SingleFlight<WeatherData> FLIGHTS = new SingleFlight<>();
+    // All the instances talk to the same host, so they share its circuit breaker.
+    private static final CircuitBreaker BREAKER = new CircuitBreaker(
+            EndpointLoader.DEFAULT_FAILURE_THRESHOLD, EndpointLoader.DEFAULT_OPEN_MILLIS);
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000L;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30 * 1000L;
+    private static final double RETRY_BUDGET = 10;
+    private static final double RETRY_TOKENS_PER_SUCCESS = 0.2;
+    private static final long REFRESH_LEAD_MILLIS = 60 * 1000L;
+    private static final long REFRESH_BATCH_WINDOW_MILLIS = 5 * 60 * 1000L;
+    private static final long REFRESH_MIN_DELAY_MILLIS = 60 * 1000L;
+    private static final long REFRESH_MAX_DELAY_MILLIS = 2 * 60 * 60 * 1000L;
+
+    Repository (File cacheDirectory) {
+        this(cacheDirectory, PrefetchMode.EAGER);
+    }
+
+    // ON_DEMAND loading is opt in: every future day is loaded at launch unless it is asked for.
+    Repository (File cacheDirectory, PrefetchMode prefetchMode) {
+        this(cacheDirectory, HttpClients.getShared(), DEFAULT_MAX_CONCURRENT_LOADS, FUTURE_DAYS,
+                prefetchMode);
+    }
 
-    /* Build Retrofit object and create Retrofit api class.  Initialize LiveData fields.  Note:
-       this will notify any observers.  Then start data download.
+    /* Create the endpoint loader, making its requests with the given client, and open its disk
+       cache in the cacheDirectory.  The temperature histories are kept next to it, outside the
+       cache so trimming the cache does not touch them.  Create the scheduler that allows at most
+       maxConcurrentLoads requests in flight at the same time, run on the loader threads shared by
+       the whole app.  Initialize the LiveData state.  Note: this will notify any observers.  Then
+       start data download for the default location, with futureDays days after the current one,
+       and restore the snapshot of the last launch in the background.
     */
-    Repository () {
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
-                .addConverterFactory(MoshiConverterFactory.create())
-                .build();
-        mEndpointApi = retrofit.create(WeatherDataEndpointApi.class);
+    Repository (File cacheDirectory, OkHttpClient client, int maxConcurrentLoads, int futureDays) {
+        this(cacheDirectory, client, maxConcurrentLoads, futureDays, PrefetchMode.EAGER);
+    }
 
-        mHaveError.setValue(false);
-        mFutureDaysCount.setValue(0);
-        mCurrentDayLoaded.setValue(false);
+    Repository (File cacheDirectory, OkHttpClient client, int maxConcurrentLoads, int futureDays,
+                PrefetchMode prefetchMode) {
+        int maxInFlight = Math.max(1, maxConcurrentLoads);
+        mFutureDays = futureDays;
+        mPrefetchMode = prefetchMode;
+        if (prefetchMode == PrefetchMode.EAGER) {
+            mFutureDaysWanted.set(true);
+            mFutureDaysWantedAt = mCreatedAt;
+        }
+        mHistoryDirectory = new File(cacheDirectory.getParentFile(),
+                cacheDirectory.getName() + HISTORY_SUFFIX);
+        mSnapshotFile = new File(cacheDirectory, SNAPSHOT_FILE);
+        mSketches = new ForecastSketches(new File(mHistoryDirectory, SKETCHES_FILE));
+
+        Moshi moshi = EndpointLoader.createMoshi();
+        mCache = new WeatherDataCache(cacheDirectory, MAX_CACHE_BYTES,
+                moshi.adapter(WeatherData.class));
+        mLoader = new EndpointLoader(EndpointLoader.createApi(BASE_URL, client), moshi, mCache,
+                FLIGHTS, BREAKER, BATCH_SUPPORTED);
+        mRetryPolicy = new RetryPolicy(MAX_ATTEMPTS, RETRY_BASE_DELAY_MILLIS,
+                RETRY_MAX_DELAY_MILLIS, RETRY_BUDGET, RETRY_TOKENS_PER_SUCCESS, new Random());
+        mRefreshScheduler = new RefreshScheduler(REFRESH_LEAD_MILLIS, REFRESH_BATCH_WINDOW_MILLIS,
+                REFRESH_MIN_DELAY_MILLIS, REFRESH_MAX_DELAY_MILLIS);
+
+        mScheduler = new FetchScheduler(LoaderExecutor.get(), maxInFlight);
+
+        addLocation(DEFAULT_LOCATION, true);
+        publishState(true);
+
+        // Mapping the snapshot and reading the cache expiries touch the disk, so they are left
+        // to a loader thread.
+        LoaderExecutor.get().execute(this::restoreSnapshot);
+    }
 
-        loadData(0);
+    /* Map the snapshot of the last launch and publish the days it has for every location, then
+       plan the first refresh.  Runs on a loader thread.
+    */
+    private void restoreSnapshot() {
+        if (mClosed) {
+            return;
+        }
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mSnapshotFile,
+                System.currentTimeMillis(), SNAPSHOT_MAX_AGE_MILLIS);
+        if (snapshot != null) {
+            // Set before reading the locations, so one added meanwhile is restored by one of
+            // the two.
+            mSnapshot = snapshot;
+            for (LocationForecast forecast : mLocations.get().values()) {
+                forecast.restore(snapshot);
+                loadData(forecast);
+            }
+            publishState(false);
+        }
+        scheduleRefresh();
     }
 
-    //Check how much data has been downloaded and start new download at next endpoint.
-    void restartLoad(){
+    /* Start managing the forecast of another location and start its download.  Visible locations
+       are downloaded before the others.  Days the snapshot has for the location are shown until
+       they are loaded.  Does nothing if the location is already there.
+    */
+    void addLocation(String location, boolean visible){
+        LocationForecast forecast = new LocationForecast(location, mFutureDays, visible);
+        while (true) {
+            Map<String, LocationForecast> current = mLocations.get();
+            if (current.containsKey(location)) {
+                return;
+            }
+            Map<String, LocationForecast> next = new LinkedHashMap<>(current);
+            next.put(location, forecast);
+            if (mLocations.compareAndSet(current, Collections.unmodifiableMap(next))) {
+                break;
+            }
+        }
+        ForecastSnapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            forecast.restore(snapshot);
+        }
+        mScheduler.setGroupPriority(location, visible ? VISIBLE_PRIORITY : BACKGROUND_PRIORITY);
+        loadData(forecast);
+    }
+
+    // Stop managing a location and cancel its downloads.  The default location always stays.
+    void removeLocation(String location){
+        if (location.equals(DEFAULT_LOCATION)) {
+            return;
+        }
+        while (true) {
+            Map<String, LocationForecast> current = mLocations.get();
+            if (! current.containsKey(location)) {
+                break;
+            }
+            Map<String, LocationForecast> next = new LinkedHashMap<>(current);
+            next.remove(location);
+            if (mLocations.compareAndSet(current, Collections.unmodifiableMap(next))) {
+                break;
+            }
+        }
+        mScheduler.cancel(location);
+        LocationRegistry.remove(location);
+    }
 
-        Boolean currentDayLoaded = mCurrentDayLoaded.getValue();
-        boolean currentDayLoadedValue = false;
-        if (currentDayLoaded != null){
-            currentDayLoadedValue = currentDayLoaded;
+    // Move the location's waiting downloads ahead of, or behind, the other locations.
+    void setLocationVisible(String location, boolean visible){
+        getForecast(location).setVisible(visible);
+        mScheduler.setGroupPriority(location, visible ? VISIBLE_PRIORITY : BACKGROUND_PRIORITY);
+    }
+
+    /* Stop all loading for good.  Waiting loads are dropped and running ones have their calls
+       cancelled, so their threads and sockets are released right away.  Waiting refreshes and
+       retries are cancelled too.  Nothing is published afterwards.  The snapshot and the quantile
+       sketches are saved in the background.
+    */
+    void close(){
+        synchronized (mTimerJobs) {
+            mClosed = true;
+            for (ScheduledFuture<?> job : mTimerJobs) {
+                job.cancel(false);
+            }
+            mTimerJobs.clear();
         }
+        LoaderExecutor.purgeTimer();
+        mScheduler.shutDown();
+        LoaderExecutor.get().execute(() -> {
+            writeSnapshot();
+            mSketches.save();
+        });
+    }
+
+    List<String> getLocations(){
+        return new ArrayList<>(mLocations.get().keySet());
+    }
 
-        Integer futureDaysCount = mFutureDaysCount.getValue();
-        int futureDaysCountValue = 0;
-        if (futureDaysCount != null){
-            futureDaysCountValue = futureDaysCount;
+    // Start a new download for every endpoint that has not been downloaded yet.  Days that
+    // were already loaded are kept, so a retry resumes where the previous load failed.
+    void restartLoad(){
+        synchronized (this) {
+            mFailedLoads = 0;
+        }
+        for (String location : getLocations()) {
+            loadData(getForecast(location));
         }
-        if (! currentDayLoadedValue){
-            loadData(0);
+    }
+
+    /* Submit one loading task for each day of the location that is still missing.  The day is
+       the task's priority, so the current day goes first.  A day that is already being loaded
+       is not submitted again.  Days with no cached copy at all are loaded with one batch request
+       instead, while the server supports them; days with a stale copy are still revalidated one
+       by one, since a conditional request that is answered 304 costs no body.  Future days are
+       left out until they are wanted, unless they are shown from the snapshot.
+    */
+    private void loadData(LocationForecast forecast) {
+        List<Integer> uncached = new ArrayList<>();
+        for (int day = 0; day <= forecast.getFutureDays(); day++){
+            if (forecast.needsLoad(day)){
+                if (! isKeptCurrent(forecast, day)) {
+                    mDeferredEndPoints.add(forecast.getEndPoint(day));
+                } else if (mLoader.isBatchAvailable()
+                        && mCache.getExpiresAt(forecast.getEndPoint(day)) == 0) {
+                    uncached.add(day);
+                } else {
+                    submitDay(forecast, day, 1);
+                }
+            }
+        }
+
+        if (uncached.size() >= MIN_BATCH_DAYS) {
+            submitBatch(forecast, uncached);
         } else {
-            loadData(futureDaysCountValue + 1);
+            for (int day : uncached) {
+                submitDay(forecast, day, 1);
+            }
         }
     }
 
-    // Start a HandlerThread and post a loading task starting at the specified by the
-    // startPoint argument.  Note: HandlerThread will stop itself when it is done.
-    private void loadData(int startPoint) {
-        mLoadHandlerThread = new HandlerThread("Loader Thread");
-        mLoadHandlerThread.start();
-        Handler handler = new Handler(mLoadHandlerThread.getLooper());
-        handler.post(() -> loadTask(startPoint));
+    // The last day of the location to load: every future day once they are wanted, else only
+    // the current day.
+    private int getLastDayToLoad(LocationForecast forecast) {
+        return mFutureDaysWanted.get() ? forecast.getFutureDays() : 0;
     }
 
-    /*Starting at the specified endpoint download the data for each endpoint.  Stop if any load
-      gets an error. Update LiveData when loads are completed.  Make a list of the temperature
-      data from each day so we can calculate the temperature standard deviation.  We calculate
-      the standard deviation here so it will be available by the time any LiveData observers are
-      notified of the last load.  Note: this method is run on a background thread.
+    // True if the day is loaded and refreshed: it is wanted, or it is already shown, like a future
+    // day restored from the snapshot, which must not be left to go stale.
+    private boolean isKeptCurrent(LocationForecast forecast, int day) {
+        return day <= getLastDayToLoad(forecast) || forecast.isLoaded(day);
+    }
+
+    /* The UI is about to need the future days, such as when the standard deviation button gets
+       focus or is pressed.  In the ON_DEMAND mode this starts their download the first time it is
+       called; otherwise it does nothing.
     */
-    private void loadTask(int startPoint) {
+    void requestFutureDays() {
+        if (! mFutureDaysWanted.compareAndSet(false, true)) {
+            return;
+        }
+        mFutureDaysWantedAt = System.currentTimeMillis();
+        for (String location : getLocations()) {
+            loadData(getForecast(location));
+        }
+    }
 
-        for (int day = startPoint; day <= FUTURE_DAYS; day++){
-            if (loadEndpoint(day) < 0){
-                break;
+    // Switching to EAGER loads the future days now; switching back only affects a repository
+    // whose future days have not been asked for yet.
+    void setPrefetchMode(PrefetchMode mode) {
+        mPrefetchMode = mode;
+        if (mode == PrefetchMode.EAGER) {
+            requestFutureDays();
+        }
+    }
+
+    PrefetchMode getPrefetchMode() {
+        return mPrefetchMode;
+    }
+
+    // Load the days with one batch request, with the priority of the first day.
+    private void submitBatch(LocationForecast forecast, List<Integer> days) {
+        StringBuilder key = new StringBuilder(BATCH_KEY);
+        for (int day : days) {
+            key.append(forecast.getEndPoint(day)).append(' ');
+        }
+        mScheduler.submit(key.toString(), forecast.getLocation(), days.get(0),
+                fetch -> batchTask(forecast, days, fetch));
+    }
+
+    /* Load the days with one request and publish each as soon as it is parsed.  If the batch
+       fails, or the server does not support batches, the days that did not arrive fall back to
+       a task each, which has its own retries and error reporting.
+    */
+    private void batchTask(LocationForecast forecast, List<Integer> days,
+                           FetchScheduler.Fetch fetch) {
+        List<String> endPoints = new ArrayList<>();
+        long[] timeToLive = new long[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            endPoints.add(forecast.getEndPoint(days.get(i)));
+            timeToLive[i] = getTimeToLive(days.get(i));
+        }
+
+        boolean[] loaded = new boolean[days.size()];
+        try {
+            mLoader.loadBatch(endPoints, timeToLive, fetch, (index, weatherData) -> {
+                loaded[index] = true;
+                if (! fetch.isCancelled()) {
+                    onDayDownloaded(forecast, days.get(index), weatherData);
+                }
+            });
+            mRetryPolicy.onSuccess();
+        } catch (IOException e) {
+            if (fetch.isCancelled()) {
+                return;
             }
-            if (day > 0) {
-                mTempsC.add(day - 1, (float) getTemperature(day));
-                mTempsF.add(day - 1, TemperatureConverter.celsiusToFahrenheit((float) getTemperature(day)));
-                if (day == FUTURE_DAYS - 1) {
-                    mStandardDeviationC = StandardDeviationCalculator.standardDeviation(mTempsC);
-                    mStandardDeviationF = StandardDeviationCalculator.standardDeviation(mTempsF);
+            e.printStackTrace();
+        }
+
+        if (fetch.isCancelled()) {
+            return;
+        }
+        for (int i = 0; i < days.size(); i++) {
+            if (! loaded[i]) {
+                submitDay(forecast, days.get(i), 1);
+            }
+        }
+    }
+
+    private void submitDay(LocationForecast forecast, int day, int attempt) {
+        mScheduler.submit(forecast.getEndPoint(day), forecast.getLocation(), day,
+                fetch -> loadTask(forecast, day, attempt, 0, fetch));
+    }
+
+    // Plan the next refresh batch, unless the repository has been closed.
+    private void scheduleRefresh() {
+        if (mClosed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delay = mRefreshScheduler.getNextDelay(now, getEarliestExpiry(now));
+        schedule(this::refresh, delay);
+    }
+
+    /* Run the work on the timer after the delay, unless the repository is closed by then.  The
+       job is kept until close() cancels it or a later job finds it done.
+    */
+    private void schedule(Runnable work, long delayMillis) {
+        synchronized (mTimerJobs) {
+            if (mClosed) {
+                return;
+            }
+            for (Iterator<ScheduledFuture<?>> jobs = mTimerJobs.iterator(); jobs.hasNext(); ) {
+                if (jobs.next().isDone()) {
+                    jobs.remove();
                 }
             }
-            postResults(day);
+            mTimerJobs.add(LoaderExecutor.schedule(() -> {
+                if (! mClosed) {
+                    work.run();
+                }
+            }, delayMillis));
         }
-        mLoadHandlerThread.quit();
     }
 
-    /*Download the data for one endpoint (day). Update LiveData in case of errors. Store data from
-      successful dowloads.
+    /* Run a refresh batch: revalidate every endpoint whose cached copy is stale, or will be
+       before the next batch is likely to run.  Whether the previous batch found new data decides
+       how soon the next one runs.  Runs on the timer thread.
     */
-    private int loadEndpoint(int day){
+    private void refresh() {
+        if (mClosed) {
+            return;
+        }
+        int bodies = mLoader.getBodiesDownloaded();
+        mRefreshScheduler.onBatchFinished(bodies > mBodiesAtLastRefresh);
+        mBodiesAtLastRefresh = bodies;
+
+        long refreshAhead = mRefreshScheduler.getRefreshAheadMillis();
+        long dueBy = System.currentTimeMillis() + refreshAhead;
+        for (String location : getLocations()) {
+            LocationForecast forecast = getForecast(location);
+            for (int day = 0; day <= forecast.getFutureDays(); day++) {
+                final int refreshDay = day;
+                String endPoint = forecast.getEndPoint(day);
+                if (isKeptCurrent(forecast, day) && mCache.getExpiresAt(endPoint) <= dueBy) {
+                    mScheduler.submit(endPoint, location, day,
+                            fetch -> loadTask(forecast, refreshDay, 1, refreshAhead, fetch));
+                }
+            }
+        }
+        scheduleRefresh();
+    }
+
+    /* The earliest time a cached endpoint goes stale.  Endpoints that are missing or due now are
+       being loaded, so they count as stale one time to live from now.
+    */
+    private long getEarliestExpiry(long now) {
+        long dueBy = now + mRefreshScheduler.getRefreshAheadMillis();
+        long earliest = Long.MAX_VALUE;
+        for (String location : getLocations()) {
+            LocationForecast forecast = getForecast(location);
+            for (int day = 0; day <= forecast.getFutureDays(); day++) {
+                if (! isKeptCurrent(forecast, day)) {
+                    continue;
+                }
+                long expiresAt = mCache.getExpiresAt(forecast.getEndPoint(day));
+                if (expiresAt <= dueBy) {
+                    expiresAt = now + getTimeToLive(day);
+                }
+                earliest = Math.min(earliest, expiresAt);
+            }
+        }
+        return earliest;
+    }
+
+    /* Submit the day again once the delay is over, unless its location has been removed or the
+       repository closed in the meantime.
+    */
+    private void retryDay(LocationForecast forecast, int day, int attempt, long delayMillis) {
+        schedule(() -> {
+            if (getForecast(forecast.getLocation()) == forecast && forecast.needsLoad(day)) {
+                submitDay(forecast, day, attempt);
+            }
+        }, delayMillis);
+    }
 
-        String endPoint = getEndPoint(day);
+    /*Publish the cached data for one day if there is any.  If there is none, or it is stale,
+      download the data and publish it.  If the server says the stale copy is still current there
+      is nothing new to publish.  When a stale copy has already been published a failed download
+      is not reported, the user still has data to look at.  Note: this method is run on a
+      background thread, possibly at the same time as the tasks for the other days.  Nothing is
+      published once the fetch has been cancelled.  A failure that may go away is retried later
+      if the retry policy allows it; the error is only reported when it gives up.  A cached copy
+      is treated as stale if it will be within refreshAheadMillis, so a refresh batch can take it
+      along, and it is only published if the day is not shown already.
+    */
+    private void loadTask(LocationForecast forecast, int day, int attempt, long refreshAheadMillis,
+                          FetchScheduler.Fetch fetch) {
+        String endPoint = forecast.getEndPoint(day);
+
+        long readStart = System.nanoTime();
+        WeatherDataCache.Entry cached = mCache.get(endPoint);
+        long now = System.currentTimeMillis();
+        mMetrics.recordCacheRead(endPoint, cached, now, readStart);
+        if (cached != null && ! fetch.isCancelled()){
+            if (forecast.needsLoad(day)) {
+                onDayLoaded(forecast, day, cached.data);
+            }
+            if (cached.isFresh(now + refreshAheadMillis)){
+                return;
+            }
+        }
 
-        Call<WeatherData> call = mEndpointApi.getWeatherData(endPoint);
-        Response<WeatherData> response;
+        WeatherData weatherData;
         try {
-            response = call.execute();
+            weatherData = mLoader.load(endPoint, getTimeToLive(day), cached, fetch, attempt);
         } catch (IOException e) {
-            e.printStackTrace();
-            postError(e.getMessage());
-            return -1;
+            // A cancelled call fails too, that is not an error to show.
+            if (fetch.isCancelled()) {
+                return;
+            }
+            long retryDelay = mRetryPolicy.getRetryDelay(attempt, e);
+            if (retryDelay >= 0) {
+                retryDay(forecast, day, attempt + 1, retryDelay);
+            } else if (cached == null) {
+                e.printStackTrace();
+                postError(e.getMessage());
+            }
+            return;
         }
+        mRetryPolicy.onSuccess();
 
-        ResponseBody errorBody = response.errorBody();
+        if (! fetch.isCancelled() && (cached == null || weatherData != cached.data)){
+            onDayDownloaded(forecast, day, weatherData);
+        }
+    }
 
-        // The errorBody is actually a read once stream, and reading it may actually produce
-        // its own error.
-        if (errorBody != null) {
-            try {
-                postError(errorBody.string());
-                errorBody.close();
-                return -1;
+    /* Publish a day that came from the network, rather than from the cache, and add it to the
+       statistics kept across launches.  The sketches take it first, so they are saved with it if
+       this day completes the location.
+    */
+    private void onDayDownloaded(LocationForecast forecast, int day, WeatherData weatherData) {
+        Weather weather = weatherData.getWeather();
+        Wind wind = weatherData.getWind();
+        // The date the day forecasts, as a day number, so a new date is added even if its
+        // values happen to repeat.
+        long date = System.currentTimeMillis() / TemperatureHistory.DAY_MILLIS + day;
+        mSketches.add(forecast.getLocation(), forecast.getEndPoint(day), date,
+                weather == null || weather.getTemp() == null ? Double.NaN : weather.getTemp(),
+                wind == null || wind.getSpeed() == null ? Double.NaN : wind.getSpeed());
+        onDayLoaded(forecast, day, weatherData);
+        if (day == 0) {
+            recordObservation(forecast.getLocation(), weatherData);
+        }
+    }
+
+    /*Store the data for one day of a location.  The location keeps the temperature statistics up
+      to date, so the standard deviation is available by the time any LiveData observers are
+      notified of the last load.  Days arrive in any order; the location takes them without
+      locking, and the state published after it always reads the location's latest days, so a
+      slower thread never publishes an older state over a newer one.  Once the location is
+      complete the snapshot and the sketches are saved, here on the loader thread, since close()
+      does not run if the process is killed.
+    */
+    private void onDayLoaded(LocationForecast forecast, int day, WeatherData weatherData) {
+        forecast.put(day, weatherData);
+        if (forecast.getLocation().equals(DEFAULT_LOCATION)) {
+            postResults();
+        }
+        if (forecast.isComplete(getLastDayToLoad(forecast))) {
+            writeSnapshot();
+            mSketches.save();
+        }
+    }
 
+    // Write every location to the snapshot the next launch starts from.
+    private void writeSnapshot() {
+        synchronized (mSnapshotLock) {
+            ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(mFutureDays + 1);
+            for (LocationForecast forecast : mLocations.get().values()) {
+                forecast.addTo(builder);
+            }
+            try {
+                builder.write(mSnapshotFile, System.currentTimeMillis());
             } catch (IOException e) {
-                postError(e.getMessage());
-                errorBody.close();
-                return -1;
+                e.printStackTrace();
             }
         }
-
-        mWeatherDataList.add(day, response.body());
-        return 1;
     }
 
     // Store error message and notify LiveData observers.
-    private void postError(String errorMsg){
+    private synchronized void postError(String errorMsg){
+        mFailedLoads++;
+        mErrorCount++;
+        mHaveError = true;
         mErrorMessage = errorMsg;
-        mHaveError.postValue(true);
+        publishState(false);
     }
 
     // Notify LiveData observers of successful downloads.
-    private void postResults(int day) {
+    private synchronized void postResults() {
+        // Leave the error set if another day of this load has already failed.
+        if (mFailedLoads == 0) {
+            mHaveError = false;
+        }
+        publishState(false);
+    }
 
-        Boolean haveError = mHaveError.getValue();
-        boolean haveErrorValue = false;
-        if (haveError != null){
-            haveErrorValue = haveError;
+    /* Publish the state of the default location, unless it is the same as the last one.  On the
+       main thread it is set right away, from the loader threads it is posted.
+    */
+    private synchronized void publishState(boolean onMainThread) {
+        ForecastState state = getForecast(DEFAULT_LOCATION).getState(mHaveError, mErrorCount,
+                mErrorMessage);
+        if (state.equals(mLastState)) {
+            return;
+        }
+        mLastState = state;
+        if (onMainThread) {
+            mState.setValue(state);
+        } else {
+            mState.postValue(state);
         }
+    }
 
-        //Reset error flag if need be, but don't do it every time so LiveData observers aren't
-        //repeatedly notified of no-error conditions.
-        if (haveErrorValue) {
-            mHaveError.postValue(false);
+    // Append a newly downloaded current temperature to the location's history and its rolling
+    // window.
+    private void recordObservation(String location, WeatherData weatherData) {
+        Weather weather = weatherData.getWeather();
+        if (weather != null && weather.getTemp() != null) {
+            getHistory(location).append(System.currentTimeMillis(), weather.getTemp());
+            SlidingWindowStatistics recent = getRecentTemperatures(location);
+            synchronized (recent) {
+                // Taken under the lock so samples go in in time order.
+                recent.add(System.currentTimeMillis(), weather.getTemp());
+            }
         }
+    }
 
-        if (day == 0) {
-            mCurrentDayLoaded.postValue(true);
-        } else {
-            mFutureDaysCount.postValue(day);
+    private SlidingWindowStatistics getRecentTemperatures(String location) {
+        synchronized (mRecentTemperatures) {
+            SlidingWindowStatistics recent = mRecentTemperatures.get(location);
+            if (recent == null) {
+                recent = new SlidingWindowStatistics(RECENT_WINDOW_MILLIS, RECENT_BIN_MIN_CELSIUS,
+                        RECENT_BIN_MAX_CELSIUS, RECENT_BIN_WIDTH_CELSIUS);
+                mRecentTemperatures.put(location, recent);
+            }
+            return recent;
         }
     }
 
-    // Return the endpoint string for the URI.  Looks like either "current" or "future_n" where
-    // n is the number of days in the future.
-    private String getEndPoint(int day) {
+    // Drop the observations that have aged out of a rolling window.  Call with its lock held.
+    private static SlidingWindowStatistics evictOld(SlidingWindowStatistics recent) {
+        recent.evictBefore(System.currentTimeMillis() - RECENT_WINDOW_MILLIS + 1);
+        return recent;
+    }
+
+    private TemperatureHistory getHistory(String location) {
+        synchronized (mHistories) {
+            TemperatureHistory history = mHistories.get(location);
+            if (history == null) {
+                String name = location.isEmpty() ? "default" : location.replace('/', '~');
+                history = new TemperatureHistory(
+                        new File(mHistoryDirectory, name + HISTORY_FILE_SUFFIX));
+                mHistories.put(location, history);
+            }
+            return history;
+        }
+    }
+
+    // How long the downloaded data for a day stays fresh in the cache.  Current conditions
+    // change more often than the forecast for the future days.
+    private long getTimeToLive(int day) {
         if (day == 0) {
-            return CURRENT_ENDPOINT;
+            return CURRENT_TTL_MILLIS;
         } else {
-            return FUTURE_ENDPOINT + day;
+            return FUTURE_TTL_MILLIS;
         }
     }
 
-    MutableLiveData<Boolean> getCurrentDayLoaded() {
-        return mCurrentDayLoaded;
+    MutableLiveData<ForecastState> getState() {
+        return mState;
+    }
+
+    // Number of responses that came with a body that had to be parsed.
+    int getBodiesDownloaded() {
+        return mLoader.getBodiesDownloaded();
+    }
+
+    // Number of conditional requests answered with 304, so no body was downloaded or parsed.
+    int getBodiesAvoided() {
+        return mLoader.getBodiesAvoided();
     }
 
-    MutableLiveData<Integer> getDataCount() {
-        return mFutureDaysCount;
+    // Number of loads that used the result of a call already in flight.
+    int getLoadsShared() {
+        return mLoader.getLoadsShared();
     }
 
-    MutableLiveData<Boolean> haveError() {
-        return mHaveError;
+    // Timings and counters of the loads of every endpoint.
+    LoadMetrics getLoadMetrics() {
+        return mMetrics;
     }
 
     String getErrorMessage() {
         return mErrorMessage;
     }
 
+    // Return the forecast of the location, or an empty one if the location is not managed.
+    private LocationForecast getForecast(String location) {
+        LocationForecast forecast = mLocations.get().get(location);
+        return forecast == null ? mNoForecast : forecast;
+    }
+
+    boolean isCurrentDayLoaded(String location) {
+        return getForecast(location).isCurrentDayLoaded();
+    }
+
+    int getFutureDaysLoaded(String location) {
+        return getForecast(location).getFutureDaysLoaded();
+    }
+
     String getName(int day) {
-        if (day >= mWeatherDataList.size()){
-            return "";
-        }
-        return mWeatherDataList.get(day).getName();
+        return getName(DEFAULT_LOCATION, day);
+    }
+
+    String getName(String location, int day) {
+        return getForecast(location).getName(day);
     }
 
     double getTemperature(int day){
-        if (day >= mWeatherDataList.size()){
-            return -1000L;
-        }
-        return mWeatherDataList.get(day).getWeather().getTemp();
+        return getTemperature(DEFAULT_LOCATION, day);
+    }
+
+    double getTemperature(String location, int day){
+        return getForecast(location).getTemperature(day);
+    }
+
+    // Fahrenheit is not stored, it is converted from the Celsius column when asked for.
+    float getTemperatureFahrenheit(int day){
+        return getTemperatureFahrenheit(DEFAULT_LOCATION, day);
+    }
+
+    float getTemperatureFahrenheit(String location, int day){
+        return TemperatureConverter.celsiusToFahrenheit((float) getTemperature(location, day));
+    }
+
+    // The whole series of a location, current day first.  Days not loaded yet are NaN.
+    float[] getTemperatures(String location){
+        return getForecast(location).getTemperatures();
+    }
+
+    float[] getTemperaturesFahrenheit(String location){
+        return getForecast(location).getTemperaturesFahrenheit();
     }
 
     double getWindSpeed(int day){
-        if (day >= mWeatherDataList.size()){
-            return -1L;
-        }
-        return mWeatherDataList.get(day).getWind().getSpeed();
+        return getWindSpeed(DEFAULT_LOCATION, day);
+    }
+
+    double getWindSpeed(String location, int day){
+        return getForecast(location).getWindSpeed(day);
     }
 
     int getCloudiness (int day){
-        if (day >= mWeatherDataList.size()){
-            return -1;
-        }
-        return mWeatherDataList.get(day).getClouds().getCloudiness();
+        return getCloudiness(DEFAULT_LOCATION, day);
+    }
+
+    int getCloudiness (String location, int day){
+        return getForecast(location).getCloudiness(day);
     }
 
     float getStandardDeviationCelsius(){
-        return mStandardDeviationC;
+        return getStandardDeviationCelsius(DEFAULT_LOCATION);
+    }
+
+    float getStandardDeviationCelsius(String location){
+        return getForecast(location).getStandardDeviationCelsius();
     }
 
     float getStandardDeviationFahrenheit() {
-        return mStandardDeviationF;
+        return getStandardDeviationFahrenheit(DEFAULT_LOCATION);
+    }
+
+    float getStandardDeviationFahrenheit(String location) {
+        float deviationC = getStandardDeviationCelsius(location);
+        if (deviationC < 0){
+            return deviationC;
+        }
+        return TemperatureConverter.celsiusDifferenceToFahrenheit(deviationC);
+    }
+
+    // Standard deviation of the future days loaded so far, or NaN until there are two of them.
+    float getRunningStandardDeviationCelsius(){
+        return getForecast(DEFAULT_LOCATION).getRunningStandardDeviationCelsius();
+    }
+
+    float getRunningStandardDeviationFahrenheit(){
+        return TemperatureConverter.celsiusDifferenceToFahrenheit(
+                getRunningStandardDeviationCelsius());
+    }
+
+    /* Statistics of the temperatures observed at the location over the last number of days, in
+       Celsius, read from its history.
+    */
+    RunningStatistics getHistoryStatistics(String location, int days) {
+        long now = System.currentTimeMillis();
+        return getHistory(location).getStatistics(now - days * TemperatureHistory.DAY_MILLIS,
+                now + 1);
+    }
+
+    // Estimated percentile (0 to 100) of the temperatures observed over the last number of days.
+    double getHistoryPercentileCelsius(String location, int days, double percentile) {
+        long now = System.currentTimeMillis();
+        return getHistory(location).getPercentile(now - days * TemperatureHistory.DAY_MILLIS,
+                now + 1, percentile);
     }
 
     int getFutureDays() {
-        return FUTURE_DAYS;
+        return mFutureDays;
+    }
+
+    /* Estimated percentile (0 to 100) of every temperature downloaded for the location, in
+       Celsius, in this session and earlier ones.  A null location means every location.
+    */
+    double getForecastTemperaturePercentileCelsius(String location, double percentile) {
+        return mSketches.getTemperaturePercentile(location, percentile);
+    }
+
+    double getForecastWindSpeedPercentile(String location, double percentile) {
+        return mSketches.getWindSpeedPercentile(location, percentile);
+    }
+
+    /* Rolling statistics of the temperatures observed at the location over the last day while
+       the app was running, in Celsius.  NaN if there are too few observations.
+    */
+    double getRecentMeanCelsius(String location) {
+        SlidingWindowStatistics recent = getRecentTemperatures(location);
+        synchronized (recent) {
+            return evictOld(recent).getMean();
+        }
+    }
+
+    double getRecentStandardDeviationCelsius(String location) {
+        SlidingWindowStatistics recent = getRecentTemperatures(location);
+        synchronized (recent) {
+            return evictOld(recent).getStandardDeviation();
+        }
+    }
+
+    double getRecentMinCelsius(String location) {
+        SlidingWindowStatistics recent = getRecentTemperatures(location);
+        synchronized (recent) {
+            return evictOld(recent).getMin();
+        }
+    }
+
+    double getRecentMaxCelsius(String location) {
+        SlidingWindowStatistics recent = getRecentTemperatures(location);
+        synchronized (recent) {
+            return evictOld(recent).getMax();
+        }
+    }
+
+    double getRecentPercentileCelsius(String location, double percentile) {
+        SlidingWindowStatistics recent = getRecentTemperatures(location);
+        synchronized (recent) {
+            return evictOld(recent).getPercentile(percentile);
+        }
+    }
+
+    // Number of future days, over all locations, whose load was put off because the future days
+    // were not wanted yet.
+    int getDeferredLoads() {
+        return mDeferredEndPoints.size();
+    }
+
+    /* Number of future day downloads avoided so far: the future days that are not loaded while
+       nobody has asked for them.  Drops to 0 once they are asked for.
+    */
+    int getFutureDayLoadsSaved() {
+        if (mFutureDaysWanted.get()) {
+            return 0;
+        }
+        int saved = 0;
+        for (String location : getLocations()) {
+            LocationForecast forecast = getForecast(location);
+            for (int day = 1; day <= forecast.getFutureDays(); day++) {
+                if (! isKeptCurrent(forecast, day)) {
+                    saved++;
+                }
+            }
+        }
+        return saved;
+    }
+
+    // Milliseconds from the start until the future days were asked for, -1 if they have not been.
+    long getMillisUntilFutureDaysWanted() {
+        long wantedAt = mFutureDaysWantedAt;
+        return wantedAt < 0 ? -1 : wantedAt - mCreatedAt;
     }
 }
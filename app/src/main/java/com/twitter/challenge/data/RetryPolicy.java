@@ -0,0 +1,78 @@
+package com.twitter.challenge.data;
+
+import java.io.IOException;
+import java.util.Random;
+
+/* Decides whether, and when, a failed load is tried again.  Delays grow exponentially from the
+ * base delay up to the maximum, and each is picked at random between half and all of that, so
+ * loads that failed together don't all retry at the same moment.  Retries are limited per load
+ * by the maximum number of attempts, and overall by a budget: every retry spends a token and
+ * every success earns back part of one, so when most loads fail retrying stops instead of adding
+ * to the load of a struggling server.  Only failures that may go away are retried, such as
+ * network errors and server errors, not a missing document.
+ */
+class RetryPolicy {
+
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final double mMaxTokens;
+    private final double mTokensPerSuccess;
+    private final Random mRandom;
+    private double mTokens;
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double maxTokens,
+                double tokensPerSuccess, Random random) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMaxTokens = maxTokens;
+        mTokensPerSuccess = tokensPerSuccess;
+        mRandom = random;
+        mTokens = maxTokens;
+    }
+
+    /* Return how many milliseconds to wait before trying again after the given attempt failed
+       (the first attempt is 1), or -1 if the load should not be retried.  If the circuit is open
+       the wait lasts at least until a trial request is allowed.
+    */
+    synchronized long getRetryDelay(int attempt, IOException error) {
+        if (attempt >= mMaxAttempts || ! isRetryable(error) || mTokens < 1) {
+            return -1;
+        }
+        mTokens--;
+
+        int doublings = Math.min(attempt - 1, 30);
+        long ceiling = Math.min(mMaxDelayMillis, mBaseDelayMillis << doublings);
+        long delay = ceiling / 2 + (long) (mRandom.nextDouble() * (ceiling - ceiling / 2));
+        if (error instanceof CircuitBreaker.OpenException) {
+            delay = Math.max(delay, ((CircuitBreaker.OpenException) error).retryAfterMillis);
+        }
+        return delay;
+    }
+
+    // A load succeeded, earn back part of a retry.
+    synchronized void onSuccess() {
+        mTokens = Math.min(mMaxTokens, mTokens + mTokensPerSuccess);
+    }
+
+    synchronized double getTokens() {
+        return mTokens;
+    }
+
+    static boolean isRetryable(IOException error) {
+        if (error instanceof EndpointLoader.HttpError) {
+            return isRetryable(((EndpointLoader.HttpError) error).code);
+        }
+        return true;
+    }
+
+    static boolean isRetryable(int httpCode) {
+        return httpCode >= HTTP_SERVER_ERROR || httpCode == HTTP_REQUEST_TIMEOUT
+                || httpCode == HTTP_TOO_MANY_REQUESTS;
+    }
+}
@@ -0,0 +1,127 @@
+package com.twitter.challenge.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/* Coalesces concurrent loads of the same key.  The first caller for a key runs the load, callers
+ * that arrive while it is in flight wait for it and get the same result, or the same exception.
+ * Nothing is remembered once the load is done, the next caller starts a new one.  If the caller
+ * that ran the load had its fetch cancelled, the result is not shared; the waiting callers that
+ * are still wanted start the load again.  A waiting caller whose own fetch is cancelled stops
+ * waiting right away.
+ */
+class SingleFlight<T> {
+
+    // The work done for a key.
+    interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    // One load in progress and, once done, its outcome.  Its monitor guards mDone.
+    private static class Flight<T> {
+        private boolean mDone;
+        private T mResult;
+        private IOException mError;
+        private boolean mAbandoned;
+    }
+
+    private final Map<String, Flight<T>> mFlights = new HashMap<>();
+    private int mShared = 0;
+
+    /* Run the loader for the key, or wait for the load already in flight for it.  The fetch is
+       the caller's, it may be null if the caller can't be cancelled.  Throws
+       InterruptedIOException if the fetch is cancelled while waiting.
+    */
+    T load(String key, FetchScheduler.Fetch fetch, Loader<T> loader) throws IOException {
+        while (true) {
+            Flight<T> flight;
+            boolean leader = false;
+            synchronized (this) {
+                flight = mFlights.get(key);
+                if (flight == null) {
+                    flight = new Flight<>();
+                    mFlights.put(key, flight);
+                    leader = true;
+                } else {
+                    mShared++;
+                }
+            }
+
+            if (leader) {
+                return run(key, fetch, flight, loader);
+            }
+
+            await(key, fetch, flight);
+            if (flight.mAbandoned && ! isCancelled(fetch)) {
+                continue;
+            }
+            if (flight.mError != null) {
+                throw flight.mError;
+            }
+            return flight.mResult;
+        }
+    }
+
+    // Number of callers that shared a load started by another caller.
+    synchronized int getShared() {
+        return mShared;
+    }
+
+    // Wait until the flight is done, or until the caller's own fetch is cancelled.
+    private static <T> void await(String key, FetchScheduler.Fetch fetch, Flight<T> flight)
+            throws InterruptedIOException {
+        if (fetch != null) {
+            fetch.setOnCancel(() -> {
+                synchronized (flight) {
+                    flight.notifyAll();
+                }
+            });
+        }
+        try {
+            synchronized (flight) {
+                while (! flight.mDone && ! isCancelled(fetch)) {
+                    flight.wait();
+                }
+                if (! flight.mDone) {
+                    throw new InterruptedIOException("Cancelled waiting for " + key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + key);
+        } finally {
+            if (fetch != null) {
+                fetch.setOnCancel(null);
+            }
+        }
+    }
+
+    private T run(String key, FetchScheduler.Fetch fetch, Flight<T> flight, Loader<T> loader)
+            throws IOException {
+        try {
+            flight.mResult = loader.load();
+            return flight.mResult;
+        } catch (IOException e) {
+            flight.mError = e;
+            throw e;
+        } catch (RuntimeException e) {
+            flight.mError = new IOException(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                mFlights.remove(key);
+            }
+            synchronized (flight) {
+                flight.mAbandoned = isCancelled(fetch);
+                flight.mDone = true;
+                flight.notifyAll();
+            }
+        }
+    }
+
+    private static boolean isCancelled(FetchScheduler.Fetch fetch) {
+        return fetch != null && fetch.isCancelled();
+    }
+}
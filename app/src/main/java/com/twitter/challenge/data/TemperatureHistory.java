@@ -0,0 +1,372 @@
+package com.twitter.challenge.data;
+
+import com.twitter.challenge.RunningStatistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Append-only log of the observed temperatures of one location, kept across launches.  Every
+ * record is a fixed size summary of a time range: its count, mean, sum of squared deviations,
+ * minimum, maximum and a few quantile points.  A new observation is a record of one sample.
+ * Compaction, run every so many appends, downsamples old records: after two days the records of
+ * each hour are merged into one, after thirty days those of each day.  Merged summaries give the
+ * same count, mean and standard deviation as the samples they replace, so statistics over any
+ * range are exact while the file stays small.  Statistics are computed by streaming the file,
+ * never by loading it.
+ * Percentiles are estimated from a fixed histogram of tenth degree bins.  Each quantile point of a
+ * record stands for an equal share of its samples, so a merged record keeps the shape of its
+ * samples rather than counting them all at its mean.
+ */
+class TemperatureHistory {
+
+    static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    private static final long RAW_RETENTION_MILLIS = 2 * DAY_MILLIS;
+    private static final long HOURLY_RETENTION_MILLIS = 30 * DAY_MILLIS;
+    private static final int COMPACT_EVERY_APPENDS = 50;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4;
+    // Quantile points per record, at the middle of each of this many equal shares of samples.
+    private static final int POINTS = 8;
+    // start, end, count, mean, sum of squared deviations, min, max, points.
+    private static final int RECORD_BYTES = 8 + 8 + 4 + 8 + 8 + 4 + 4 + 4 * POINTS;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final float MIN_BIN_CELSIUS = -100;
+    private static final float MAX_BIN_CELSIUS = 70;
+    private static final float BIN_WIDTH_CELSIUS = 0.1f;
+
+    private final File mFile;
+    private int mAppendsSinceCompaction = 0;
+    private boolean mChecked = false;
+
+    // One record read back from the file.
+    private static class Record {
+        long start;
+        long end;
+        int count;
+        double mean;
+        double sumOfSquaredDeviations;
+        float min;
+        float max;
+        // Sorted; point i is the value at the middle of the i-th of POINTS equal shares.
+        final float[] points = new float[POINTS];
+
+        // A record of one sample, or of samples all summarized by their mean.
+        void setPoints(float value) {
+            for (int i = 0; i < POINTS; i++) {
+                points[i] = value;
+            }
+        }
+
+        // Add the other record's statistics to this one's.  The points are left alone.
+        void merge(Record other) {
+            RunningStatistics statistics = new RunningStatistics();
+            statistics.merge(count, mean, sumOfSquaredDeviations, min, max);
+            statistics.merge(other.count, other.mean, other.sumOfSquaredDeviations,
+                    other.min, other.max);
+            start = Math.min(start, other.start);
+            end = Math.max(end, other.end);
+            count += other.count;
+            mean = statistics.getMean();
+            sumOfSquaredDeviations = statistics.getSumOfSquaredDeviations();
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /* Merge a group of records into the first one.  The points of the whole group are pooled in
+       one go, each weighted by its share of its record's count, and every new point is read off
+       at its fraction of the total weight, interpolating between the two pooled points around
+       it.  Pooling once per group, rather than pair by pair, keeps rounding from piling up.
+    */
+    private static Record merge(List<Record> group) {
+        Record merged = group.get(0);
+        if (group.size() == 1) {
+            return merged;
+        }
+
+        int pooled = group.size() * POINTS;
+        float[] values = new float[pooled];
+        double[] weights = new double[pooled];
+        for (int r = 0; r < group.size(); r++) {
+            Record record = group.get(r);
+            for (int i = 0; i < POINTS; i++) {
+                // Insertion sort, the groups are at most a day of hourly records.
+                int k = r * POINTS + i;
+                while (k > 0 && values[k - 1] > record.points[i]) {
+                    values[k] = values[k - 1];
+                    weights[k] = weights[k - 1];
+                    k--;
+                }
+                values[k] = record.points[i];
+                weights[k] = record.count / (double) POINTS;
+            }
+        }
+        for (int r = 1; r < group.size(); r++) {
+            merged.merge(group.get(r));
+        }
+
+        // Each pooled point sits at the middle of its weight.
+        double total = merged.count;
+        double centre = weights[0] / 2;
+        int k = 0;
+        for (int i = 0; i < POINTS; i++) {
+            double target = (i + 0.5) / POINTS * total;
+            while (k + 1 < pooled && centre + (weights[k] + weights[k + 1]) / 2 <= target) {
+                centre += (weights[k] + weights[k + 1]) / 2;
+                k++;
+            }
+            if (target <= centre || k + 1 == pooled) {
+                merged.points[i] = values[k];
+            } else {
+                double next = centre + (weights[k] + weights[k + 1]) / 2;
+                double fraction = (target - centre) / (next - centre);
+                merged.points[i] = (float) (values[k] + fraction * (values[k + 1] - values[k]));
+            }
+        }
+        return merged;
+    }
+
+    TemperatureHistory(File file) {
+        mFile = file;
+    }
+
+    /* Add an observation made at the given time.  Compacts the log every so many appends.
+       Errors are printed and the observation is lost.
+    */
+    synchronized void append(long time, double temperatureC) {
+        if (Double.isNaN(temperatureC)) {
+            return;
+        }
+
+        try {
+            prepare();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(mFile, true)))) {
+                Record record = new Record();
+                record.start = time;
+                record.end = time;
+                record.count = 1;
+                record.mean = temperatureC;
+                record.min = (float) temperatureC;
+                record.max = (float) temperatureC;
+                record.setPoints((float) temperatureC);
+                write(out, record);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (++mAppendsSinceCompaction >= COMPACT_EVERY_APPENDS) {
+            compact(time);
+        }
+    }
+
+    // Statistics of the observations made from the start time up to, not including, the end time.
+    synchronized RunningStatistics getStatistics(long start, long end) {
+        RunningStatistics statistics = new RunningStatistics();
+        try (DataInputStream in = open()) {
+            Record record = new Record();
+            while (in != null && read(in, record)) {
+                if (record.start >= start && record.start < end) {
+                    statistics.merge(record.count, record.mean, record.sumOfSquaredDeviations,
+                            record.min, record.max);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return statistics;
+    }
+
+    /* Estimate the given percentile (0 to 100) of the observations made from the start time up
+       to the end time, to a tenth of a degree.  Returns NaN if there are none.
+    */
+    synchronized double getPercentile(long start, long end, double percentile) {
+        int bins = Math.round((MAX_BIN_CELSIUS - MIN_BIN_CELSIUS) / BIN_WIDTH_CELSIUS) + 1;
+        double[] counts = new double[bins];
+        long total = 0;
+        try (DataInputStream in = open()) {
+            Record record = new Record();
+            while (in != null && read(in, record)) {
+                if (record.start >= start && record.start < end) {
+                    double share = record.count / (double) POINTS;
+                    for (float point : record.points) {
+                        int bin = Math.round((point - MIN_BIN_CELSIUS) / BIN_WIDTH_CELSIUS);
+                        counts[Math.max(0, Math.min(bins - 1, bin))] += share;
+                    }
+                    total += record.count;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        double fraction = Math.min(100, Math.max(0, percentile)) / 100;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        double seen = 0;
+        for (int bin = 0; bin < bins; bin++) {
+            seen += counts[bin];
+            // Shares are fractions, allow for their rounding.
+            if (seen >= rank - 1e-6) {
+                return MIN_BIN_CELSIUS + bin * BIN_WIDTH_CELSIUS;
+            }
+        }
+        return MAX_BIN_CELSIUS;
+    }
+
+    /* Downsample the records that are old enough, relative to now.  Neighbouring records in the
+       same hour, or day, are merged into one.  The new log is written to a temporary file first
+       and then renamed, so a crash leaves either the old log or the new one.
+    */
+    synchronized void compact(long now) {
+        mAppendsSinceCompaction = 0;
+        if (! mFile.exists()) {
+            return;
+        }
+
+        File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+        try (DataInputStream in = open();
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            List<Record> group = new ArrayList<>();
+            long groupBucket = 0;
+            Record record = new Record();
+            while (in != null && read(in, record)) {
+                long bucket = bucketOf(record, now);
+                if (! group.isEmpty() && (bucket < 0 || bucket != groupBucket)) {
+                    write(out, merge(group));
+                    group.clear();
+                }
+                group.add(record);
+                groupBucket = bucket;
+                record = new Record();
+            }
+            if (! group.isEmpty()) {
+                write(out, merge(group));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+
+        mFile.delete();
+        if (! temp.renameTo(mFile)) {
+            temp.delete();
+        }
+    }
+
+    // Number of records in the log, merged or not.
+    synchronized long getRecords() {
+        if (! mFile.exists()) {
+            return 0;
+        }
+        return Math.max(0, (mFile.length() - HEADER_BYTES) / RECORD_BYTES);
+    }
+
+    /* The bucket a record is merged into: hourly buckets are even numbers and daily buckets odd,
+       so the two never match.  Records that are still recent get -1 and are kept as they are.
+    */
+    private static long bucketOf(Record record, long now) {
+        long age = now - record.end;
+        if (age >= HOURLY_RETENTION_MILLIS) {
+            return (record.start / DAY_MILLIS) * 2 + 1;
+        }
+        if (age >= RAW_RETENTION_MILLIS) {
+            return (record.start / HOUR_MILLIS) * 2;
+        }
+        return -1;
+    }
+
+    /* Before the first append, write the header of a new log, or cut off a record that a crash
+       left half written at the end of an existing one.
+    */
+    private void prepare() throws IOException {
+        if (mChecked && mFile.exists()) {
+            return;
+        }
+        File directory = mFile.getParentFile();
+        if (directory != null && ! directory.exists() && ! directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            if (file.length() < HEADER_BYTES) {
+                file.setLength(0);
+                file.writeInt(FORMAT_VERSION);
+            } else {
+                long records = (file.length() - HEADER_BYTES) / RECORD_BYTES;
+                file.setLength(HEADER_BYTES + records * RECORD_BYTES);
+            }
+        }
+        mChecked = true;
+    }
+
+    // Open the log for reading, past the header.  Returns null if there is no usable log.
+    private DataInputStream open() throws IOException {
+        if (! mFile.exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(mFile)));
+        try {
+            if (in.readInt() != FORMAT_VERSION) {
+                in.close();
+                return null;
+            }
+        } catch (EOFException e) {
+            in.close();
+            return null;
+        }
+        return in;
+    }
+
+    // Read the next record into the given one.  Returns false at the end of the log.
+    private static boolean read(DataInputStream in, Record record) throws IOException {
+        try {
+            record.start = in.readLong();
+            record.end = in.readLong();
+            record.count = in.readInt();
+            record.mean = in.readDouble();
+            record.sumOfSquaredDeviations = in.readDouble();
+            record.min = in.readFloat();
+            record.max = in.readFloat();
+            for (int i = 0; i < POINTS; i++) {
+                record.points[i] = in.readFloat();
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static void write(DataOutputStream out, Record record) throws IOException {
+        out.writeLong(record.start);
+        out.writeLong(record.end);
+        out.writeInt(record.count);
+        out.writeDouble(record.mean);
+        out.writeDouble(record.sumOfSquaredDeviations);
+        out.writeFloat(record.min);
+        out.writeFloat(record.max);
+        for (float point : record.points) {
+            out.writeFloat(point);
+        }
+    }
+}
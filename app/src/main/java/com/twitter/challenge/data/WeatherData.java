@@ -3,6 +3,13 @@ package com.twitter.challenge.data;
 
 import com.squareup.moshi.Json;
 
+/* One endpoint's weather, as decoded from its JSON.  The app decodes with the lean
+ * WeatherDataJsonAdapter (see EndpointLoader.createMoshi()), which only reads the name,
+ * temperature, wind speed and cloudiness.  Objects it decodes have isLean() set and leave coord,
+ * rain, pressure, humidity and wind direction null even when the server sent them, so a null
+ * there only means "not sent" when isLean() is false.  The disk cache writes the same lean
+ * objects, so cached copies never have those fields either.
+ */
 class WeatherData {
 
     @Json(name = "coord")
@@ -17,6 +24,8 @@ class WeatherData {
     private Clouds clouds;
     @Json(name = "name")
     private String name;
+    // True if the fields the lean adapter skips were not decoded.
+    private transient boolean lean;
 
     Coord getCoord() {
         return coord;
@@ -66,4 +75,12 @@ class WeatherData {
         this.name = name;
     }
 
+    boolean isLean() {
+        return lean;
+    }
+
+    void setLean(boolean lean) {
+        this.lean = lean;
+    }
+
 }
@@ -0,0 +1,232 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.JsonAdapter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/* Disk backed cache of downloaded WeatherData, one file per endpoint ID.  Endpoint IDs with a
+ * location path are flattened into one file name.  Each entry remembers
+ * when it was stored and how long it stays fresh.  Expired entries are still returned so the
+ * caller can show them while it downloads a new copy.  The ETag and Last-Modified validators of
+ * the download are kept with the entry so the new copy can be requested conditionally.  When the
+ * files grow past the size limit the least recently used entries are deleted.
+ */
+class WeatherDataCache {
+
+    private static final int FORMAT_VERSION = 2;
+    // Offset of the expiresAt field, after the version and storedAt fields.
+    private static final int EXPIRES_AT_OFFSET = 4 + 8;
+    private static final String FILE_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final JsonAdapter<WeatherData> mAdapter;
+
+    // One cached download.  The data is already parsed, so it can be used right away.
+    static class Entry {
+        final WeatherData data;
+        final long storedAt;
+        final long expiresAt;
+        final String eTag;
+        final String lastModified;
+        // How long decoding the data took when it was read.
+        final long decodeNanos;
+
+        Entry(WeatherData data, long storedAt, long expiresAt, String eTag, String lastModified,
+              long decodeNanos) {
+            this.data = data;
+            this.storedAt = storedAt;
+            this.expiresAt = expiresAt;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.decodeNanos = decodeNanos;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+    }
+
+    WeatherDataCache(File directory, long maxBytes, JsonAdapter<WeatherData> adapter) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mAdapter = adapter;
+    }
+
+    /* Return the entry stored for the endpoint, or null if there is none or it can't be read.
+       Unreadable files are deleted so they don't take up space.
+    */
+    synchronized Entry get(String endpoint) {
+        File file = entryFile(endpoint);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                file.delete();
+                return null;
+            }
+            long storedAt = in.readLong();
+            long expiresAt = in.readLong();
+            String eTag = readOptionalString(in);
+            String lastModified = readOptionalString(in);
+            byte[] json = new byte[in.readInt()];
+            in.readFully(json);
+            long decodeStart = System.nanoTime();
+            WeatherData data = mAdapter.fromJson(new String(json, UTF_8));
+            long decodeNanos = System.nanoTime() - decodeStart;
+            if (data == null) {
+                file.delete();
+                return null;
+            }
+
+            // Mark the entry as recently used so eviction removes it last.
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(data, storedAt, expiresAt, eTag, lastModified, decodeNanos);
+
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+
+    /* Return when the entry for the endpoint stops being fresh, or 0 if there is none.  Only the
+       header is read, the data is not parsed.
+    */
+    synchronized long getExpiresAt(String endpoint) {
+        File file = entryFile(endpoint);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            in.readLong();
+            return in.readLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /* Store the data for the endpoint, fresh for ttlMillis from now, with the validators from the
+       response it came from (either may be null).  The entry is written to a temporary file first
+       and then renamed, so a reader never sees half an entry.
+    */
+    synchronized void put(String endpoint, WeatherData data, long ttlMillis, String eTag,
+                          String lastModified) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        byte[] json = mAdapter.toJson(data).getBytes(UTF_8);
+        File temp = new File(mDirectory, fileName(endpoint) + TEMP_SUFFIX);
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(now);
+            out.writeLong(now + ttlMillis);
+            writeOptionalString(out, eTag);
+            writeOptionalString(out, lastModified);
+            out.writeInt(json.length);
+            out.write(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+
+        File file = entryFile(endpoint);
+        file.delete();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+
+        trimToSize();
+    }
+
+    /* Make an existing entry fresh for another ttlMillis, after the server confirmed it has not
+       changed.  Only the expiry time is rewritten, the data is left alone.
+    */
+    synchronized void refresh(String endpoint, long ttlMillis) {
+        File file = entryFile(endpoint);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(EXPIRES_AT_OFFSET);
+            out.writeLong(System.currentTimeMillis() + ttlMillis);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Delete least recently used entries until the cache fits in mMaxBytes.
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxBytes) {
+            return;
+        }
+
+        // Long.compare needs API 19, the app supports 16.
+        Arrays.sort(files, (a, b) -> {
+            long difference = a.lastModified() - b.lastModified();
+            return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+        });
+        for (File file : files) {
+            if (size <= mMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    private File entryFile(String endpoint) {
+        return new File(mDirectory, fileName(endpoint) + FILE_SUFFIX);
+    }
+
+    private static String fileName(String endpoint) {
+        return endpoint.replace('/', '~');
+    }
+}
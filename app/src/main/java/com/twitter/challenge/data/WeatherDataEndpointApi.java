@@ -1,14 +1,35 @@
 package com.twitter.challenge.data;
 
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
-// Interface used by Retrofit to define its's api calls.
+// Interface used by Retrofit to define its's api calls.  The id is not encoded so it can include
+// a location path such as "boston/current".  Documents come back as raw bodies, read in full
+// before the call returns, so EndpointLoader can time decoding them on its own.
 
 public interface WeatherDataEndpointApi {
 
     @GET("{id}.json")
-    Call<WeatherData> getWeatherData(@Path("id") String id);
+    Call<ResponseBody> getWeatherData(@Path(value = "id", encoded = true) String id);
+
+    // Conditional version of getWeatherData.  The server answers 304 with no body if the document
+    // still matches the validators.  Null validators are left out of the request.
+    @GET("{id}.json")
+    Call<ResponseBody> getWeatherData(@Path(value = "id", encoded = true) String id,
+                                      @Header("If-None-Match") String eTag,
+                                      @Header("If-Modified-Since") String lastModified);
+
+    // Several documents in one response, a JSON array in the order of the comma separated ids,
+    // with null for an id the server does not have.  Each id must already be URL encoded.  The
+    // body is streamed so each document can be used as soon as it is parsed.  Servers without
+    // batch support answer 404.
+    @Streaming
+    @GET("batch.json")
+    Call<ResponseBody> getWeatherDataBatch(@Query(value = "ids", encoded = true) String ids);
 }
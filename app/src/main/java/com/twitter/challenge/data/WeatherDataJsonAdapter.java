@@ -0,0 +1,278 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+
+/* Hand written streaming adapter for WeatherData, used instead of Moshi's reflective one.  It
+ * matches field names with pre-encoded JsonReader.Options and reads values straight into the
+ * model, with no reflection and no intermediate maps.  In lean mode only the fields the app
+ * shows are decoded (name, temperature, wind speed and cloudiness); the coord and rain objects,
+ * pressure, humidity and wind direction are skipped without being allocated.  Unknown fields are
+ * always skipped.
+ */
+class WeatherDataJsonAdapter extends JsonAdapter<WeatherData> {
+
+    private static final JsonReader.Options WEATHER_DATA_NAMES =
+            JsonReader.Options.of("name", "weather", "wind", "clouds", "coord", "rain");
+    private static final JsonReader.Options WEATHER_NAMES =
+            JsonReader.Options.of("temp", "pressure", "humidity");
+    private static final JsonReader.Options WIND_NAMES = JsonReader.Options.of("speed", "deg");
+    private static final JsonReader.Options CLOUDS_NAMES = JsonReader.Options.of("cloudiness");
+    private static final JsonReader.Options COORD_NAMES = JsonReader.Options.of("lon", "lat");
+    private static final JsonReader.Options RAIN_NAMES = JsonReader.Options.of("3h");
+
+    private final boolean mLean;
+
+    // If lean is true only the fields the app shows are decoded.
+    WeatherDataJsonAdapter(boolean lean) {
+        mLean = lean;
+    }
+
+    @Override
+    public WeatherData fromJson(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        WeatherData weatherData = new WeatherData();
+        weatherData.setLean(mLean);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(WEATHER_DATA_NAMES)) {
+                case 0:
+                    weatherData.setName(nextString(reader));
+                    break;
+                case 1:
+                    weatherData.setWeather(readWeather(reader));
+                    break;
+                case 2:
+                    weatherData.setWind(readWind(reader));
+                    break;
+                case 3:
+                    weatherData.setClouds(readClouds(reader));
+                    break;
+                case 4:
+                    if (mLean) {
+                        reader.skipValue();
+                    } else {
+                        weatherData.setCoord(readCoord(reader));
+                    }
+                    break;
+                case 5:
+                    if (mLean) {
+                        reader.skipValue();
+                    } else {
+                        weatherData.setRain(readRain(reader));
+                    }
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return weatherData;
+    }
+
+    private Weather readWeather(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        Weather weather = new Weather();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(WEATHER_NAMES)) {
+                case 0:
+                    weather.setTemp(nextDouble(reader));
+                    break;
+                case 1:
+                    if (mLean) {
+                        reader.skipValue();
+                    } else {
+                        weather.setPressure(nextInt(reader));
+                    }
+                    break;
+                case 2:
+                    if (mLean) {
+                        reader.skipValue();
+                    } else {
+                        weather.setHumidity(nextInt(reader));
+                    }
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return weather;
+    }
+
+    private Wind readWind(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        Wind wind = new Wind();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(WIND_NAMES)) {
+                case 0:
+                    wind.setSpeed(nextDouble(reader));
+                    break;
+                case 1:
+                    if (mLean) {
+                        reader.skipValue();
+                    } else {
+                        wind.setDeg(nextInt(reader));
+                    }
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return wind;
+    }
+
+    private Clouds readClouds(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        Clouds clouds = new Clouds();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(CLOUDS_NAMES) == 0) {
+                clouds.setCloudiness(nextInt(reader));
+            } else {
+                reader.skipName();
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return clouds;
+    }
+
+    private Coord readCoord(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        Coord coord = new Coord();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(COORD_NAMES)) {
+                case 0:
+                    coord.setLon(nextDouble(reader));
+                    break;
+                case 1:
+                    coord.setLat(nextDouble(reader));
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return coord;
+    }
+
+    private Rain readRain(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+
+        Rain rain = new Rain();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.selectName(RAIN_NAMES) == 0) {
+                rain.set3h(nextInt(reader));
+            } else {
+                reader.skipName();
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return rain;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+        return reader.nextString();
+    }
+
+    private static Double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+        return reader.nextDouble();
+    }
+
+    private static Integer nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            return reader.nextNull();
+        }
+        return reader.nextInt();
+    }
+
+    // Write the fields that are set.  Used by the disk cache, so in lean mode the cached copy
+    // holds only the lean fields too.
+    @Override
+    public void toJson(JsonWriter writer, WeatherData weatherData) throws IOException {
+        if (weatherData == null) {
+            writer.nullValue();
+            return;
+        }
+
+        writer.beginObject();
+        Coord coord = weatherData.getCoord();
+        if (coord != null) {
+            writer.name("coord").beginObject();
+            writer.name("lon").value(coord.getLon());
+            writer.name("lat").value(coord.getLat());
+            writer.endObject();
+        }
+        Weather weather = weatherData.getWeather();
+        if (weather != null) {
+            writer.name("weather").beginObject();
+            writer.name("temp").value(weather.getTemp());
+            writer.name("pressure").value(weather.getPressure());
+            writer.name("humidity").value(weather.getHumidity());
+            writer.endObject();
+        }
+        Wind wind = weatherData.getWind();
+        if (wind != null) {
+            writer.name("wind").beginObject();
+            writer.name("speed").value(wind.getSpeed());
+            writer.name("deg").value(wind.getDeg());
+            writer.endObject();
+        }
+        Rain rain = weatherData.getRain();
+        if (rain != null) {
+            writer.name("rain").beginObject();
+            writer.name("3h").value(rain.get3h());
+            writer.endObject();
+        }
+        Clouds clouds = weatherData.getClouds();
+        if (clouds != null) {
+            writer.name("clouds").beginObject();
+            writer.name("cloudiness").value(clouds.getCloudiness());
+            writer.endObject();
+        }
+        writer.name("name").value(weatherData.getName());
+        writer.endObject();
+    }
+
+    @Override
+    public String toString() {
+        return "JsonAdapter(WeatherData)";
+    }
+}
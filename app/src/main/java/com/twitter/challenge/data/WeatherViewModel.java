@@ -1,57 +1,223 @@
 package com.twitter.challenge.data;
 
+import android.app.Application;
+
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.ViewModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /*
  * ViewModel that the activity can use to observe data in the repository.  Has getters for the
- * various LiveData fields and for numerous other data values needed for the app.
+ * LiveData state and for numerous other data values needed for the app.  It is an
+ * AndroidViewModel so the repository can keep its cache in the app's cache directory.
  */
 
-public class WeatherViewModel extends ViewModel {
+public class WeatherViewModel extends AndroidViewModel {
 
-    private Repository mRepository = new Repository();
+    private static final String CACHE_DIRECTORY = "weather";
+    private Repository mRepository;
 
-    public LiveData<Boolean> getLiveCurrentDayLoaded() {
-        return mRepository.getCurrentDayLoaded();
+    public WeatherViewModel(Application application) {
+        super(application);
+        mRepository = new Repository(new File(application.getCacheDir(), CACHE_DIRECTORY));
     }
 
-    public LiveData<Integer> getLiveDataCount() {
-        return mRepository.getDataCount();
+    // The ViewModel is going away, so its downloads are no longer wanted.
+    @Override
+    protected void onCleared() {
+        mRepository.close();
     }
 
-    public LiveData<Boolean> getLiveHaveError() {
-        return mRepository.haveError();
+    // One state for the default location, published only when something in it changes.
+    public LiveData<ForecastState> getLiveState() {
+        return mRepository.getState();
     }
 
     public boolean currentDayLoaded() {
-        Boolean value = mRepository.getCurrentDayLoaded().getValue();
-        if (value != null){
-            return value;
-        }
-        return false;
+        ForecastState state = mRepository.getState().getValue();
+        return state != null && state.isCurrentDayLoaded();
     }
 
     public int getFutureDaysLoaded() {
-        Integer value = mRepository.getDataCount().getValue();
-        if (value != null){
-            return value;
-        }
-        return 0;
+        ForecastState state = mRepository.getState().getValue();
+        return state == null ? 0 : state.getFutureDaysLoaded();
     }
 
     public boolean haveError(){
-        Boolean value = mRepository.haveError().getValue();
-        if (value != null){
-            return value;
-        }
-        return false;
+        ForecastState state = mRepository.getState().getValue();
+        return state != null && state.haveError();
     }
 
     public void restartLoad(){
         mRepository.restartLoad();
     }
 
+    // The UI is about to show something that needs the future days.  In the ON_DEMAND prefetch
+    // mode their download starts now.
+    public void requestFutureDays(){
+        mRepository.requestFutureDays();
+    }
+
+    public void setPrefetchMode(PrefetchMode mode){
+        mRepository.setPrefetchMode(mode);
+    }
+
+    public PrefetchMode getPrefetchMode(){
+        return mRepository.getPrefetchMode();
+    }
+
+    // What ON_DEMAND loading has saved: future day downloads not made so far, and how long the
+    // future days were left alone, -1 if they still are.
+    public int getFutureDayLoadsSaved(){
+        return mRepository.getFutureDayLoadsSaved();
+    }
+
+    public int getDeferredLoads(){
+        return mRepository.getDeferredLoads();
+    }
+
+    public long getMillisUntilFutureDaysWanted(){
+        return mRepository.getMillisUntilFutureDaysWanted();
+    }
+
+    // Other locations.  The getters that take only a day are for the default location.
+
+    public void addLocation(String location, boolean visible){
+        mRepository.addLocation(location, visible);
+    }
+
+    public void removeLocation(String location){
+        mRepository.removeLocation(location);
+    }
+
+    public void setLocationVisible(String location, boolean visible){
+        mRepository.setLocationVisible(location, visible);
+    }
+
+    public List<String> getLocations(){
+        return mRepository.getLocations();
+    }
+
+    public boolean currentDayLoaded(String location){
+        return mRepository.isCurrentDayLoaded(location);
+    }
+
+    public int getFutureDaysLoaded(String location){
+        return mRepository.getFutureDaysLoaded(location);
+    }
+
+    public String getName(String location, int day){
+        return mRepository.getName(location, day);
+    }
+
+    public float getTemperature(String location, int day){
+        return (float)mRepository.getTemperature(location, day);
+    }
+
+    public float getTemperatureFahrenheit(String location, int day){
+        return mRepository.getTemperatureFahrenheit(location, day);
+    }
+
+    public float[] getTemperatures(String location){
+        return mRepository.getTemperatures(location);
+    }
+
+    public float[] getTemperaturesFahrenheit(String location){
+        return mRepository.getTemperaturesFahrenheit(location);
+    }
+
+    public double getWindSpeed(String location, int day){
+        return mRepository.getWindSpeed(location, day);
+    }
+
+    public int getCloudiness(String location, int day){
+        return mRepository.getCloudiness(location, day);
+    }
+
+    public float getStandardDeviationCelsius(String location){
+        return mRepository.getStandardDeviationCelsius(location);
+    }
+
+    public float getStandardDeviationFahrenheit(String location){
+        return mRepository.getStandardDeviationFahrenheit(location);
+    }
+
+    // Long range statistics of the temperatures observed over the last number of days, in
+    // Celsius.  NaN if too few were observed.
+    public double getHistoryMeanCelsius(String location, int days){
+        return mRepository.getHistoryStatistics(location, days).getMean();
+    }
+
+    public double getHistoryStandardDeviationCelsius(String location, int days){
+        return mRepository.getHistoryStatistics(location, days).getStandardDeviation();
+    }
+
+    public double getHistoryPercentileCelsius(String location, int days, double percentile){
+        return mRepository.getHistoryPercentileCelsius(location, days, percentile);
+    }
+
+    // Rolling statistics of the temperatures observed over the last day, in Celsius.  NaN until
+    // there are enough observations.
+    public double getRecentMeanCelsius(String location){
+        return mRepository.getRecentMeanCelsius(location);
+    }
+
+    public double getRecentStandardDeviationCelsius(String location){
+        return mRepository.getRecentStandardDeviationCelsius(location);
+    }
+
+    public double getRecentMinCelsius(String location){
+        return mRepository.getRecentMinCelsius(location);
+    }
+
+    public double getRecentMaxCelsius(String location){
+        return mRepository.getRecentMaxCelsius(location);
+    }
+
+    public double getRecentPercentileCelsius(String location, double percentile){
+        return mRepository.getRecentPercentileCelsius(location, percentile);
+    }
+
+    // Percentiles of every temperature and wind speed downloaded, across sessions, from
+    // quantile sketches.  A null location means all of them.  NaN until something is downloaded.
+    public double getForecastTemperaturePercentileCelsius(String location, double percentile){
+        return mRepository.getForecastTemperaturePercentileCelsius(location, percentile);
+    }
+
+    public double getForecastWindSpeedPercentile(String location, double percentile){
+        return mRepository.getForecastWindSpeedPercentile(location, percentile);
+    }
+
+    public int getBodiesDownloaded(){
+        return mRepository.getBodiesDownloaded();
+    }
+
+    public int getBodiesAvoided(){
+        return mRepository.getBodiesAvoided();
+    }
+
+    public int getLoadsShared(){
+        return mRepository.getLoadsShared();
+    }
+
+    public LoadMetrics getLoadMetrics(){
+        return mRepository.getLoadMetrics();
+    }
+
+    // Write the load metrics report to a file.  Returns false if it could not be written.
+    public boolean dumpLoadMetrics(File file){
+        try {
+            mRepository.getLoadMetrics().dump(file);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     public String getErrorMessage(){
         return mRepository.getErrorMessage();
     }
@@ -64,6 +230,10 @@ public class WeatherViewModel extends ViewModel {
         return (float)mRepository.getTemperature(day);
     }
 
+    public float getTemperatureFahrenheit(int day){
+        return mRepository.getTemperatureFahrenheit(day);
+    }
+
     public double getWindSpeed(int day){
         return mRepository.getWindSpeed(day);
     }
@@ -80,6 +250,14 @@ public class WeatherViewModel extends ViewModel {
         return mRepository.getStandardDeviationFahrenheit();
     }
 
+    public float getRunningStandardDeviationCelsius(){
+        return mRepository.getRunningStandardDeviationCelsius();
+    }
+
+    public float getRunningStandardDeviationFahrenheit(){
+        return mRepository.getRunningStandardDeviationFahrenheit();
+    }
+
     public int getFutureDays(){
         return mRepository.getFutureDays();
     }
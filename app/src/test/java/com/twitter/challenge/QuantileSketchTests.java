@@ -0,0 +1,70 @@
+package com.twitter.challenge;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class QuantileSketchTests {
+
+    private static final double[] QUANTILES = {0.01, 0.1, 0.5, 0.9, 0.99};
+
+    @Test
+    public void testQuantilesStayWithinRankErrorInBoundedMemory() {
+        Random random = new Random(3);
+        int samples = 200000;
+        double[] values = new double[samples];
+        QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_K, new Random(1));
+        for (int i = 0; i < samples; i++) {
+            values[i] = 15 + random.nextGaussian() * 8;
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(sketch.getCount()).isEqualTo(samples);
+        assertThat(sketch.getRetained()).isLessThan(4 * QuantileSketch.DEFAULT_K);
+        assertThat(sketch.getQuantile(0)).isEqualTo(values[0]);
+        assertThat(sketch.getQuantile(1)).isEqualTo(values[samples - 1]);
+        for (double quantile : QUANTILES) {
+            double rank = rankOf(values, sketch.getQuantile(quantile)) / (double) samples;
+            assertThat(rank).isEqualTo(quantile, within(0.02));
+        }
+    }
+
+    @Test
+    public void testMergedAndRestoredSketchesDescribeBothSeries() throws Exception {
+        QuantileSketch low = new QuantileSketch(QuantileSketch.DEFAULT_K, new Random(1));
+        QuantileSketch high = new QuantileSketch(QuantileSketch.DEFAULT_K, new Random(2));
+        for (int i = 0; i < 50000; i++) {
+            low.add(i);
+            high.add(50000 + i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        low.writeTo(new DataOutputStream(bytes));
+        QuantileSketch restored = QuantileSketch.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), new Random(3));
+        assertThat(restored.getCount()).isEqualTo(low.getCount());
+        assertThat(restored.getQuantile(0.5)).isEqualTo(low.getQuantile(0.5));
+
+        restored.merge(high);
+        assertThat(restored.getCount()).isEqualTo(100000);
+        assertThat(restored.getMin()).isEqualTo(0);
+        assertThat(restored.getMax()).isEqualTo(99999);
+        assertThat(restored.getQuantile(0.5)).isEqualTo(50000, within(2000.0));
+        assertThat(restored.getQuantile(0.9)).isEqualTo(90000, within(2000.0));
+    }
+
+    // Number of values not greater than the given one.
+    private static int rankOf(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index < 0 ? -index - 1 : index + 1;
+    }
+}
@@ -0,0 +1,65 @@
+package com.twitter.challenge;
+
+import org.assertj.core.data.Offset;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class RunningStatisticsTests {
+
+    private static final double[] POINTS =
+            {9, 2, 5, 4, 12, 7, 8, 11, 9, 3, 7, 4, 12, 5, 4, 10, 9, 6, 9, 4};
+
+    @Test
+    public void testRunningStatistics() {
+        final Offset<Double> precision = within(0.001);
+        RunningStatistics statistics = new RunningStatistics();
+
+        assertThat(statistics.getCount()).isEqualTo(0);
+        assertThat(statistics.getMean()).isNaN();
+        assertThat(statistics.getStandardDeviation()).isNaN();
+
+        for (double point : POINTS) {
+            statistics.add(point);
+        }
+
+        assertThat(statistics.getCount()).isEqualTo(20);
+        assertThat(statistics.getMean()).isEqualTo(7, precision);
+        assertThat(statistics.getStandardDeviation()).isEqualTo(3.061, precision);
+        assertThat(statistics.getMin()).isEqualTo(2, precision);
+        assertThat(statistics.getMax()).isEqualTo(12, precision);
+
+        statistics.clear();
+        assertThat(statistics.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMergeMatchesSingleAccumulator() {
+        final Offset<Double> precision = within(0.000001);
+        RunningStatistics all = new RunningStatistics();
+        RunningStatistics first = new RunningStatistics();
+        RunningStatistics second = new RunningStatistics();
+        RunningStatistics empty = new RunningStatistics();
+
+        for (int i = 0; i < POINTS.length; i++) {
+            all.add(POINTS[i]);
+            if (i < 7) {
+                first.add(POINTS[i]);
+            } else {
+                second.add(POINTS[i]);
+            }
+        }
+        first.merge(second);
+        first.merge(empty);
+        empty.merge(first);
+
+        for (RunningStatistics merged : new RunningStatistics[]{first, empty}) {
+            assertThat(merged.getCount()).isEqualTo(all.getCount());
+            assertThat(merged.getMean()).isEqualTo(all.getMean(), precision);
+            assertThat(merged.getVariance()).isEqualTo(all.getVariance(), precision);
+            assertThat(merged.getMin()).isEqualTo(all.getMin(), precision);
+            assertThat(merged.getMax()).isEqualTo(all.getMax(), precision);
+        }
+    }
+}
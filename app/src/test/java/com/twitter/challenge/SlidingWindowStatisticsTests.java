@@ -0,0 +1,78 @@
+package com.twitter.challenge;
+
+import org.assertj.core.data.Offset;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class SlidingWindowStatisticsTests {
+
+    @Test
+    public void testWindowMatchesRecomputedStatistics() {
+        final Offset<Double> precision = within(1e-6);
+        long window = 60;
+        SlidingWindowStatistics statistics = new SlidingWindowStatistics(window, -50, 50, 0.1);
+        Random random = new Random(7);
+        int samples = 5000;
+        long[] times = new long[samples];
+        double[] values = new double[samples];
+        long time = 0;
+
+        for (int i = 0; i < samples; i++) {
+            time += random.nextInt(5);
+            times[i] = time;
+            values[i] = Math.round((10 + random.nextGaussian() * 8) * 10) / 10.0;
+            statistics.add(time, values[i]);
+
+            if (i % 97 == 0) {
+                RunningStatistics expected = new RunningStatistics();
+                int first = i;
+                while (first > 0 && times[first - 1] > time - window) {
+                    first--;
+                }
+                for (int j = first; j <= i; j++) {
+                    expected.add(values[j]);
+                }
+                double[] sorted = Arrays.copyOfRange(values, first, i + 1);
+                Arrays.sort(sorted);
+
+                assertThat((long) statistics.getCount()).isEqualTo(expected.getCount());
+                assertThat(statistics.getMean()).isEqualTo(expected.getMean(), precision);
+                if (expected.getCount() > 1) {
+                    assertThat(statistics.getStandardDeviation())
+                            .isEqualTo(expected.getStandardDeviation(), precision);
+                }
+                assertThat(statistics.getMin()).isEqualTo(expected.getMin());
+                assertThat(statistics.getMax()).isEqualTo(expected.getMax());
+                double median = sorted[(int) Math.ceil(0.5 * sorted.length) - 1];
+                assertThat(statistics.getPercentile(50)).isEqualTo(median, within(0.05));
+            }
+        }
+    }
+
+    @Test
+    public void testEvictionEmptiesTheWindow() {
+        SlidingWindowStatistics statistics = new SlidingWindowStatistics(1000, 0, 10, 1);
+
+        assertThat(statistics.getMean()).isNaN();
+        statistics.add(0, 4);
+        statistics.add(10, 8);
+        statistics.add(20, 6);
+        assertThat(statistics.getMax()).isEqualTo(8);
+        assertThat(statistics.getPercentile(100)).isEqualTo(8);
+
+        statistics.evictBefore(15);
+        assertThat(statistics.getCount()).isEqualTo(1);
+        assertThat(statistics.getMin()).isEqualTo(6);
+        assertThat(statistics.getMean()).isEqualTo(6);
+
+        statistics.clear();
+        assertThat(statistics.getCount()).isEqualTo(0);
+        assertThat(statistics.getMax()).isNaN();
+        assertThat(statistics.getPercentile(50)).isNaN();
+    }
+}
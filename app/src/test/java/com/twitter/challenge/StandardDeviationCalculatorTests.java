@@ -34,6 +34,18 @@ public class StandardDeviationCalculatorTests {
         assertThat(StandardDeviationCalculator.standardDeviation(points)).isEqualTo(3.061f, precision);
     }
 
+    @Test
+    public void testStandardDeviationOfPrimitiveArray() {
+        float[] a1 = {4f, 4f, 4f, 4f, 4f};
+        float[] a2 = {0.15f, -0.09f, 0.10f, 0.06f};
+        float[] a3 = {5f, 7f, 3f, 7f};
+        final Offset<Float> precision = within(0.001f);
+
+        assertThat(StandardDeviationCalculator.standardDeviation(a1)).isEqualTo(0, precision);
+        assertThat(StandardDeviationCalculator.standardDeviation(a2)).isEqualTo(0.1034f, precision);
+        assertThat(StandardDeviationCalculator.standardDeviation(a3)).isEqualTo(1.915f, precision);
+    }
+
 
 }
 
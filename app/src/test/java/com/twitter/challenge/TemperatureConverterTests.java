@@ -3,6 +3,10 @@ package com.twitter.challenge;
 import org.assertj.core.data.Offset;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.assertj.core.api.Java6Assertions.within;
 
@@ -24,4 +28,83 @@ public class TemperatureConverterTests {
         assertThat(TemperatureConverter.celsiusToFahrenheit(100)).isEqualTo(212, precision);
         assertThat(TemperatureConverter.celsiusToFahrenheit(1000)).isEqualTo(1832, precision);
     }
+
+    @Test
+    public void testOtherScalarConversions() {
+        final Offset<Float> precision = within(0.01f);
+
+        assertThat(TemperatureConverter.fahrenheitToCelsius(-58)).isEqualTo(-50, precision);
+        assertThat(TemperatureConverter.fahrenheitToCelsius(32)).isEqualTo(0, precision);
+        assertThat(TemperatureConverter.fahrenheitToCelsius(212)).isEqualTo(100, precision);
+        assertThat(TemperatureConverter.celsiusToKelvin(-273.15f)).isEqualTo(0, precision);
+        assertThat(TemperatureConverter.celsiusToKelvin(25)).isEqualTo(298.15f, precision);
+        assertThat(TemperatureConverter.kelvinToCelsius(0)).isEqualTo(-273.15f, precision);
+        assertThat(TemperatureConverter.kelvinToCelsius(373.15f)).isEqualTo(100, precision);
+    }
+
+    @Test
+    public void testBulkArrayConversionsMatchScalar() {
+        float[] celsius = new float[1003];
+        for (int i = 0; i < celsius.length; i++) {
+            celsius[i] = -60 + i * 0.137f;
+        }
+        float[] converted = new float[celsius.length];
+
+        TemperatureConverter.celsiusToFahrenheit(celsius, converted);
+        for (int i = 0; i < celsius.length; i++) {
+            assertThat(converted[i]).isEqualTo(TemperatureConverter.celsiusToFahrenheit(celsius[i]));
+        }
+
+        TemperatureConverter.fahrenheitToCelsius(converted, converted);
+        for (int i = 0; i < celsius.length; i++) {
+            assertThat(converted[i]).isEqualTo(celsius[i], within(0.001f));
+        }
+
+        TemperatureConverter.celsiusToKelvin(celsius, converted);
+        for (int i = 0; i < celsius.length; i++) {
+            assertThat(converted[i]).isEqualTo(TemperatureConverter.celsiusToKelvin(celsius[i]));
+        }
+
+        TemperatureConverter.kelvinToCelsius(converted, converted);
+        for (int i = 0; i < celsius.length; i++) {
+            assertThat(converted[i]).isEqualTo(celsius[i], within(0.001f));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkArrayConversionRejectsShortDestination() {
+        TemperatureConverter.celsiusToFahrenheit(new float[4], new float[3]);
+    }
+
+    @Test
+    public void testBulkBufferConversions() {
+        float[] celsius = {-50, 0, 10, 100};
+        FloatBuffer heap = FloatBuffer.wrap(new float[]{99, 99, 99, 99, 99});
+        heap.position(1);
+
+        TemperatureConverter.celsiusToFahrenheit(FloatBuffer.wrap(celsius), heap);
+
+        assertThat(heap.position()).isEqualTo(5);
+        assertThat(heap.array()).containsExactly(99, -58, 32, 50, 212);
+
+        FloatBuffer direct = ByteBuffer.allocateDirect(4 * celsius.length)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        FloatBuffer source = FloatBuffer.wrap(celsius);
+
+        TemperatureConverter.celsiusToKelvin(source, direct);
+
+        assertThat(source.remaining()).isEqualTo(0);
+        assertThat(direct.get(0)).isEqualTo(223.15f, within(0.01f));
+        assertThat(direct.get(3)).isEqualTo(373.15f, within(0.01f));
+    }
+
+    @Test
+    public void testCelsiusDifferenceToFahrenheitConversion() {
+        final Offset<Float> precision = within(0.01f);
+
+        assertThat(TemperatureConverter.celsiusDifferenceToFahrenheit(0)).isEqualTo(0, precision);
+        assertThat(TemperatureConverter.celsiusDifferenceToFahrenheit(1)).isEqualTo(1.8f, precision);
+        assertThat(TemperatureConverter.celsiusDifferenceToFahrenheit(3.061f)).isEqualTo(5.51f, precision);
+        assertThat(TemperatureConverter.celsiusDifferenceToFahrenheit(100)).isEqualTo(180, precision);
+    }
 }
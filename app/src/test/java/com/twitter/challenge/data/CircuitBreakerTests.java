@@ -0,0 +1,40 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class CircuitBreakerTests {
+
+    @Test
+    public void testOpensAfterThresholdAndLetsOneTrialThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+
+        breaker.onFailure(0);
+        assertThat(breaker.allowRequest(0)).isTrue();
+        breaker.onFailure(10);
+        assertThat(breaker.isOpen(10)).isTrue();
+        assertThat(breaker.allowRequest(500)).isFalse();
+        assertThat(breaker.getRetryAfter(500)).isEqualTo(510);
+
+        assertThat(breaker.allowRequest(1010)).isTrue();
+        assertThat(breaker.allowRequest(1010)).isFalse();
+
+        breaker.onSuccess();
+        assertThat(breaker.allowRequest(1020)).isTrue();
+        assertThat(breaker.getRetryAfter(1020)).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailedTrialOpensAgainAndInconclusiveTrialIsReleased() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+
+        assertThat(breaker.allowRequest(1000)).isTrue();
+        breaker.onInconclusive();
+        assertThat(breaker.allowRequest(1000)).isTrue();
+        breaker.onFailure(1000);
+        assertThat(breaker.allowRequest(1500)).isFalse();
+        assertThat(breaker.allowRequest(2000)).isTrue();
+    }
+}
@@ -0,0 +1,128 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class FetchSchedulerTests {
+
+    // Runs submitted work only when the test asks for it.
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> mQueue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                mQueue.poll().run();
+            }
+        }
+    }
+
+    @Test
+    public void testInFlightBoundAndPriorityOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        FetchScheduler scheduler = new FetchScheduler(executor, 2);
+        List<String> ran = new ArrayList<>();
+
+        scheduler.setGroupPriority("background", 1);
+        scheduler.submit("background/current", "background", 0, fetch -> ran.add(fetch.key));
+        scheduler.submit("future_2", "", 2, fetch -> ran.add(fetch.key));
+        scheduler.submit("future_1", "", 1, fetch -> ran.add(fetch.key));
+        scheduler.submit("current", "", 0, fetch -> ran.add(fetch.key));
+
+        assertThat(scheduler.getInFlight()).isEqualTo(2);
+        assertThat(executor.mQueue).hasSize(2);
+
+        executor.runAll();
+
+        assertThat(ran).containsExactly("background/current", "future_2", "current", "future_1");
+        assertThat(scheduler.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDuplicateKeysAreNotSubmitted() {
+        ManualExecutor executor = new ManualExecutor();
+        FetchScheduler scheduler = new FetchScheduler(executor, 1);
+        List<String> ran = new ArrayList<>();
+
+        assertThat(scheduler.submit("current", "", 0, fetch -> ran.add("first"))).isTrue();
+        assertThat(scheduler.submit("current", "", 0, fetch -> ran.add("second"))).isFalse();
+        assertThat(scheduler.isPending("current")).isTrue();
+
+        executor.runAll();
+
+        assertThat(ran).containsExactly("first");
+        assertThat(scheduler.isPending("current")).isFalse();
+        assertThat(scheduler.submit("current", "", 0, fetch -> ran.add("third"))).isTrue();
+    }
+
+    @Test
+    public void testCancelDropsWaitingAndFlagsRunningFetches() {
+        ManualExecutor executor = new ManualExecutor();
+        FetchScheduler scheduler = new FetchScheduler(executor, 1);
+        List<FetchScheduler.Fetch> seen = new ArrayList<>();
+        List<String> ran = new ArrayList<>();
+
+        scheduler.submit("boston/current", "boston", 0, fetch -> {
+            scheduler.cancel("boston");
+            seen.add(fetch);
+        });
+        scheduler.submit("boston/future_1", "boston", 1, fetch -> ran.add(fetch.key));
+        scheduler.submit("current", "", 0, fetch -> ran.add(fetch.key));
+
+        executor.runAll();
+
+        assertThat(seen).hasSize(1);
+        assertThat(seen.get(0).isCancelled()).isTrue();
+        assertThat(ran).containsExactly("current");
+    }
+
+    @Test
+    public void testShutDownCancelsEverythingAndRejectsNewJobs() {
+        ManualExecutor executor = new ManualExecutor();
+        FetchScheduler scheduler = new FetchScheduler(executor, 1);
+        List<FetchScheduler.Fetch> seen = new ArrayList<>();
+        List<String> ran = new ArrayList<>();
+
+        scheduler.submit("current", "", 0, fetch -> {
+            scheduler.shutDown();
+            seen.add(fetch);
+        });
+        scheduler.submit("future_1", "", 1, fetch -> ran.add(fetch.key));
+
+        executor.runAll();
+
+        assertThat(seen.get(0).isCancelled()).isTrue();
+        assertThat(ran).isEmpty();
+        assertThat(scheduler.getInFlight()).isEqualTo(0);
+        assertThat(scheduler.submit("future_2", "", 2, fetch -> ran.add(fetch.key))).isFalse();
+    }
+
+    @Test
+    public void testThrowingJobReleasesItsSlot() {
+        ManualExecutor executor = new ManualExecutor();
+        FetchScheduler scheduler = new FetchScheduler(executor, 1);
+        List<String> ran = new ArrayList<>();
+
+        scheduler.submit("current", "", 0, fetch -> {
+            throw new IllegalStateException("Broken job");
+        });
+        scheduler.submit("future_1", "", 1, fetch -> ran.add(fetch.key));
+        executor.runAll();
+
+        assertThat(ran).containsExactly("future_1");
+        assertThat(scheduler.isPending("current")).isFalse();
+        assertThat(scheduler.getInFlight()).isEqualTo(0);
+        assertThat(scheduler.submit("current", "", 0, fetch -> ran.add(fetch.key))).isTrue();
+    }
+}
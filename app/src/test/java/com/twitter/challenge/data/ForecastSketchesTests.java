@@ -0,0 +1,37 @@
+package com.twitter.challenge.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ForecastSketchesTests {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testRefreshedDaysAreAddedOnce() throws Exception {
+        File file = new File(mFolder.newFolder(), "sketches.bin");
+        ForecastSketches sketches = new ForecastSketches(file);
+        sketches.add("", "future_1", 100, 10, 1);
+        sketches.add("", "future_2", 100, 30, 2);
+        sketches.add("", "future_1", 100, 10, 1);
+        sketches.add("", "future_1", 100, 10, 1);
+        // Of 10 and 30 the 60th percentile is 30; had the refreshes counted it would be 10.
+        assertThat(sketches.getTemperaturePercentile("", 60)).isEqualTo(30);
+        sketches.save();
+
+        // The days already added are remembered across launches.
+        ForecastSketches reopened = new ForecastSketches(file);
+        reopened.add("", "future_1", 100, 10, 1);
+        assertThat(reopened.getTemperaturePercentile("", 60)).isEqualTo(30);
+
+        // The same values for a new date are a new day.
+        reopened.add("", "future_1", 101, 10, 1);
+        assertThat(reopened.getTemperaturePercentile("", 60)).isEqualTo(10);
+    }
+}
@@ -0,0 +1,125 @@
+package com.twitter.challenge.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ForecastSnapshotTests {
+
+    private static final long MAX_AGE = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotRestoresLocationsAndNeedsReload() throws Exception {
+        File file = new File(mFolder.newFolder(), "forecast.snapshot");
+        LocationForecast home = new LocationForecast("", 2, true);
+        home.put(0, weatherData("Tweatherville", 14.5, 3.5, 65));
+        home.put(1, weatherData("Tweatherville", 16.0, 1.0, 10));
+        home.put(2, weatherData("Tweatherville", 18.0, 2.0, 20));
+        LocationForecast boston = new LocationForecast("boston", 2, false);
+        boston.put(1, weatherData("Boston", -2.0, 8.0, 90));
+
+        ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(3);
+        home.addTo(builder);
+        boston.addTo(builder);
+        builder.write(file, 1234L);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.open(file, 1234L + 10, MAX_AGE);
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.getWrittenAt()).isEqualTo(1234L);
+        assertThat(snapshot.indexOf("paris")).isEqualTo(-1);
+
+        LocationForecast restored = new LocationForecast("", 2, true);
+        restored.restore(snapshot);
+        assertThat(restored.getName(0)).isEqualTo("Tweatherville");
+        assertThat(restored.getTemperature(0)).isEqualTo(14.5);
+        assertThat(restored.getWindSpeed(0)).isEqualTo(3.5);
+        assertThat(restored.getCloudiness(0)).isEqualTo(65);
+        assertThat(restored.getFutureDaysLoaded()).isEqualTo(2);
+        assertThat(restored.getStandardDeviationCelsius())
+                .isEqualTo(home.getStandardDeviationCelsius());
+        assertThat(restored.needsLoad(0)).isTrue();
+        assertThat(restored.isComplete()).isFalse();
+
+        LocationForecast restoredBoston = new LocationForecast("boston", 2, false);
+        restoredBoston.restore(snapshot);
+        assertThat(restoredBoston.isCurrentDayLoaded()).isFalse();
+        assertThat(restoredBoston.getName(1)).isEqualTo("Boston");
+
+        restored.put(0, weatherData("Tweatherville", 15.0, 3.0, 60));
+        assertThat(restored.needsLoad(0)).isFalse();
+        assertThat(restored.getTemperature(0)).isEqualTo(15.0);
+    }
+
+    @Test
+    public void testDamagedSnapshotIsIgnored() throws Exception {
+        File file = new File(mFolder.newFolder(), "forecast.snapshot");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        assertThat(ForecastSnapshot.open(file, 1234L, MAX_AGE)).isNull();
+        assertThat(file.exists()).isFalse();
+    }
+
+    @Test
+    public void testOldSnapshotIsIgnored() throws Exception {
+        File file = new File(mFolder.newFolder(), "forecast.snapshot");
+        LocationForecast home = new LocationForecast("", 1, true);
+        home.put(0, weatherData("Tweatherville", 14.5, 3.5, 65));
+        ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(2);
+        home.addTo(builder);
+        builder.write(file, 1234L);
+
+        assertThat(ForecastSnapshot.open(file, 1234L + MAX_AGE, MAX_AGE)).isNotNull();
+        assertThat(ForecastSnapshot.open(file, 1234L + MAX_AGE + 1, MAX_AGE)).isNull();
+        assertThat(file.exists()).isFalse();
+    }
+
+    @Test
+    public void testSnapshotWithBadOffsetsIsIgnored() throws Exception {
+        File directory = mFolder.newFolder();
+        // The header is 24 bytes, the one location entry 12 bytes after it, then the days, whose
+        // name offset is 21 bytes into each.
+        int[] damagedOffsets = {28, 32, 24 + 12 + 21};
+        for (int damaged : damagedOffsets) {
+            File file = new File(directory, "forecast.snapshot");
+            LocationForecast home = new LocationForecast("", 1, true);
+            home.put(0, weatherData("Tweatherville", 14.5, 3.5, 65));
+            ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(2);
+            home.addTo(builder);
+            builder.write(file, 1234L);
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                output.seek(damaged);
+                output.writeInt(Integer.MAX_VALUE - 8);
+            }
+
+            assertThat(ForecastSnapshot.open(file, 1234L, MAX_AGE)).isNull();
+            assertThat(file.exists()).isFalse();
+        }
+    }
+
+    private static WeatherData weatherData(String name, double temp, double speed,
+                                           int cloudiness) {
+        Weather weather = new Weather();
+        weather.setTemp(temp);
+        Wind wind = new Wind();
+        wind.setSpeed(speed);
+        Clouds clouds = new Clouds();
+        clouds.setCloudiness(cloudiness);
+        WeatherData data = new WeatherData();
+        data.setName(name);
+        data.setWeather(weather);
+        data.setWind(wind);
+        data.setClouds(clouds);
+        return data;
+    }
+}
@@ -0,0 +1,43 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ForecastStateTests {
+
+    private static ForecastState state(float temperature, int futureDaysLoaded, int errorCount) {
+        return new ForecastState(true, LocationRegistry.intern("", "Here"), temperature, 3.5, 60,
+                futureDaysLoaded, 5, errorCount > 0, errorCount, errorCount > 0 ? "Failed" : null);
+    }
+
+    @Test
+    public void testEqualStatesAreNoChange() {
+        ForecastState first = state(20, 2, 0);
+        ForecastState second = state(20, 2, 0);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(second.hashCode()).isEqualTo(first.hashCode());
+        assertThat(second.currentDayChanged(first)).isFalse();
+        assertThat(second.futureDaysChanged(first)).isFalse();
+        assertThat(second.errorReported(first)).isFalse();
+    }
+
+    @Test
+    public void testChangesAreReportedPerPart() {
+        ForecastState first = state(20, 2, 0);
+
+        assertThat(first.currentDayChanged(null)).isTrue();
+        assertThat(state(21, 2, 0).currentDayChanged(first)).isTrue();
+        assertThat(state(21, 2, 0).futureDaysChanged(first)).isFalse();
+        assertThat(state(20, 3, 0).futureDaysChanged(first)).isTrue();
+        assertThat(state(20, 3, 0).currentDayChanged(first)).isFalse();
+
+        // The same error reported again is a new report.
+        ForecastState failed = state(20, 2, 1);
+        assertThat(failed.errorReported(first)).isTrue();
+        assertThat(state(20, 2, 2).errorReported(failed)).isTrue();
+        assertThat(state(20, 2, 1).errorReported(failed)).isFalse();
+        assertThat(state(20, 5, 0).areFutureDaysLoaded()).isTrue();
+    }
+}
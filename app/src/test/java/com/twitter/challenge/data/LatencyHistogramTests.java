@@ -0,0 +1,36 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void testPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10000);
+        assertThat(histogram.getMax()).isEqualTo(10000);
+        assertThat(histogram.getPercentile(50)).isBetween(5000L, 5625L);
+        assertThat(histogram.getPercentile(99)).isBetween(9900L, 10000L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testSmallValuesAreExactAndEmptyHistogramHasNoPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentile(50)).isEqualTo(-1);
+
+        histogram.record(3);
+        histogram.record(7);
+        assertThat(histogram.getPercentile(50)).isEqualTo(3);
+        assertThat(histogram.getPercentile(95)).isEqualTo(7);
+
+        histogram.clear();
+        assertThat(histogram.getCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+
+public class LocationForecastTests {
+
+    @Test
+    public void testConcurrentPutsAreAllKept() throws Exception {
+        int futureDays = 8;
+        LocationForecast forecast = new LocationForecast("", futureDays, true);
+        List<Thread> threads = new ArrayList<>();
+        for (int day = 0; day <= futureDays; day++) {
+            final int threadDay = day;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    forecast.put(threadDay, weatherData("Day " + threadDay, threadDay, 1, 1));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(forecast.isComplete()).isTrue();
+        assertThat(forecast.getFutureDaysLoaded()).isEqualTo(futureDays);
+        for (int day = 0; day <= futureDays; day++) {
+            assertThat(forecast.getTemperature(day)).isEqualTo((double) day);
+        }
+        // Standard deviation of 1..8.
+        assertThat((double) forecast.getStandardDeviationCelsius())
+                .isCloseTo(Math.sqrt(6), offset(1e-5));
+    }
+
+    @Test
+    public void testReaderNeverSeesHalfADay() throws Exception {
+        LocationForecast forecast = new LocationForecast("", 1, true);
+        forecast.put(0, weatherData("Cold", -5, 1, 10));
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                forecast.put(0, i % 2 == 0 ? weatherData("Hot", 30, 9, 90)
+                        : weatherData("Cold", -5, 1, 10));
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        while (! done.get()) {
+            ForecastState state = forecast.getState(false, 0, null);
+            if (state.getName().equals("Hot")) {
+                assertThat(state.getTemperature()).isEqualTo(30f);
+                assertThat(state.getCloudiness()).isEqualTo(90);
+            } else {
+                assertThat(state.getTemperature()).isEqualTo(-5f);
+                assertThat(state.getCloudiness()).isEqualTo(10);
+            }
+        }
+        writer.join();
+    }
+
+    private static WeatherData weatherData(String name, double temp, double speed,
+                                           int cloudiness) {
+        Weather weather = new Weather();
+        weather.setTemp(temp);
+        Wind wind = new Wind();
+        wind.setSpeed(speed);
+        Clouds clouds = new Clouds();
+        clouds.setCloudiness(cloudiness);
+        WeatherData data = new WeatherData();
+        data.setName(name);
+        data.setWeather(weather);
+        data.setWind(wind);
+        data.setClouds(clouds);
+        return data;
+    }
+}
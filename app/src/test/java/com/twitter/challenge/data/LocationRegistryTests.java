@@ -0,0 +1,56 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class LocationRegistryTests {
+
+    private static final String DAY =
+            "{\"coord\":{\"lon\":-122.42,\"lat\":37.77},\"weather\":{\"temp\":14.77},"
+            + "\"name\":\"Registry Town\"}";
+
+    private static WeatherData parse(boolean lean) throws IOException {
+        return new WeatherDataJsonAdapter(lean).fromJson(DAY);
+    }
+
+    @Test
+    public void testDaysOfALocationShareOneName() throws IOException {
+        ForecastStore store = new ForecastStore(3);
+        store.put(0, "registry", parse(true));
+        store.put(1, "registry", parse(false));
+        store.put(2, "registry", new String("Registry Town"), 10, 2, 0);
+
+        assertThat(store.getName(0)).isEqualTo("Registry Town");
+        assertThat(store.getName(1)).isSameAs(store.getName(0));
+        assertThat(store.getName(2)).isSameAs(store.getName(0));
+    }
+
+    @Test
+    public void testRenamedAndRemovedLocationsAreForgotten() {
+        LocationRegistry.intern("springfield_il", "Springfield");
+        String massachusetts = LocationRegistry.intern("springfield_ma", "Springfield");
+        int size = LocationRegistry.size();
+
+        // A new name replaces the entry of the path, days already stored keep theirs.
+        ForecastStore store = new ForecastStore(1);
+        store.put(0, "springfield_il", "Springfield", 10, 2, 0);
+        String renamed = LocationRegistry.intern("springfield_il", "Springfield, IL");
+        assertThat(renamed).isEqualTo("Springfield, IL");
+        assertThat(store.getName(0)).isEqualTo("Springfield");
+        assertThat(LocationRegistry.size()).isEqualTo(size);
+        assertThat(LocationRegistry.intern("springfield_ma", "Springfield"))
+                .isSameAs(massachusetts);
+
+        LocationRegistry.remove("springfield_il");
+        LocationRegistry.remove("springfield_ma");
+        assertThat(LocationRegistry.size()).isEqualTo(size - 2);
+    }
+
+    @Test
+    public void testUnknownNames() {
+        assertThat(LocationRegistry.intern("", null)).isNull();
+    }
+}
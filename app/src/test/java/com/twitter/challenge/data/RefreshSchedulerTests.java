@@ -0,0 +1,37 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class RefreshSchedulerTests {
+
+    @Test
+    public void testBatchRunsLeadTimeBeforeExpiryWithinBounds() {
+        RefreshScheduler scheduler = new RefreshScheduler(100, 500, 50, 10000);
+
+        assertThat(scheduler.getRefreshAheadMillis()).isEqualTo(600);
+        assertThat(scheduler.getNextDelay(1000, 3000)).isEqualTo(1900);
+        // Already stale, or far away, is clamped to the bounds.
+        assertThat(scheduler.getNextDelay(1000, 500)).isEqualTo(50);
+        assertThat(scheduler.getNextDelay(1000, 1000000)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testUnchangedBatchesBackOffUntilDataChanges() {
+        RefreshScheduler scheduler = new RefreshScheduler(0, 0, 100, 1000);
+
+        scheduler.onBatchFinished(false);
+        assertThat(scheduler.getNextDelay(0, 0)).isEqualTo(200);
+        scheduler.onBatchFinished(false);
+        assertThat(scheduler.getNextDelay(0, 0)).isEqualTo(400);
+        for (int i = 0; i < 40; i++) {
+            scheduler.onBatchFinished(false);
+        }
+        assertThat(scheduler.getNextDelay(0, 0)).isEqualTo(1000);
+
+        scheduler.onBatchFinished(true);
+        assertThat(scheduler.getUnchangedBatches()).isEqualTo(0);
+        assertThat(scheduler.getNextDelay(0, 0)).isEqualTo(100);
+    }
+}
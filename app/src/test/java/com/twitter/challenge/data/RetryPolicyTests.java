@@ -0,0 +1,40 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class RetryPolicyTests {
+
+    @Test
+    public void testDelaysGrowWithJitterUntilAttemptsRunOut() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 3000, 10, 0.2, new Random(42));
+        IOException error = new IOException("timeout");
+
+        assertThat(policy.getRetryDelay(1, error)).isBetween(500L, 1000L);
+        assertThat(policy.getRetryDelay(2, error)).isBetween(1000L, 2000L);
+        assertThat(policy.getRetryDelay(3, error)).isBetween(1500L, 3000L);
+        assertThat(policy.getRetryDelay(4, error)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testOnlyTransientErrorsAreRetriedWithinBudget() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 2, 0.5, new Random(42));
+
+        assertThat(policy.getRetryDelay(1, new EndpointLoader.HttpError(404, "Not found")))
+                .isEqualTo(-1);
+        assertThat(policy.getRetryDelay(1, new EndpointLoader.HttpError(503, "Busy")))
+                .isGreaterThanOrEqualTo(0);
+        assertThat(policy.getRetryDelay(1, new CircuitBreaker.OpenException(5000)))
+                .isEqualTo(5000);
+
+        // Both tokens are spent, a success earns back half of one.
+        assertThat(policy.getRetryDelay(1, new IOException("reset"))).isEqualTo(-1);
+        policy.onSuccess();
+        policy.onSuccess();
+        assertThat(policy.getRetryDelay(1, new IOException("reset"))).isGreaterThanOrEqualTo(0);
+    }
+}
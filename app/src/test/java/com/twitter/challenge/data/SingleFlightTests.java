@@ -0,0 +1,146 @@
+package com.twitter.challenge.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class SingleFlightTests {
+
+    @Test
+    public void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        String[] results = new String[2];
+
+        Thread leader = new Thread(() -> results[0] = load(flights, () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "shared";
+        }));
+        leader.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread follower = new Thread(() -> results[1] = load(flights, () -> {
+            loads.incrementAndGet();
+            return "own";
+        }));
+        follower.start();
+        while (flights.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).containsExactly("shared", "shared");
+        assertThat(flights.load("current", null, () -> "next")).isEqualTo("next");
+    }
+
+    @Test
+    public void testErrorIsSharedWithWaitingCallers() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] errors = new String[1];
+
+        Thread leader = new Thread(() -> {
+            try {
+                flights.load("current", null, () -> {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Not found");
+                });
+            } catch (IOException e) {
+                // Expected, the follower checks the error.
+            }
+        });
+        leader.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        Thread follower = new Thread(() -> {
+            try {
+                flights.load("current", null, () -> "own");
+            } catch (IOException e) {
+                errors[0] = e.getMessage();
+            }
+        });
+        follower.start();
+        while (flights.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join();
+        follower.join();
+
+        assertThat(errors[0]).isEqualTo("Not found");
+    }
+
+    @Test
+    public void testCancelledWaiterStopsWaiting() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread leader = new Thread(() -> load(flights, () -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "shared";
+        }));
+        leader.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The waiter runs as a job of its own scheduler, so cancelling its group cancels it.
+        FetchScheduler scheduler = new FetchScheduler(command -> new Thread(command).start(), 1);
+        CountDownLatch finished = new CountDownLatch(1);
+        IOException[] errors = new IOException[1];
+        scheduler.submit("current", "waiter", 0, fetch -> {
+            try {
+                flights.load("current", fetch, () -> "own");
+            } catch (IOException e) {
+                errors[0] = e;
+            }
+            finished.countDown();
+        });
+        while (flights.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        scheduler.cancel("waiter");
+
+        // The waiter gives up while the shared load is still running.
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(errors[0]).isInstanceOf(InterruptedIOException.class);
+        release.countDown();
+        leader.join();
+    }
+
+    private interface Work {
+        String run() throws Exception;
+    }
+
+    private static String load(SingleFlight<String> flights, Work work) {
+        try {
+            return flights.load("current", null, () -> {
+                try {
+                    return work.run();
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
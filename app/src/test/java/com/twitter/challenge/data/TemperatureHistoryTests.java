@@ -0,0 +1,86 @@
+package com.twitter.challenge.data;
+
+import com.twitter.challenge.RunningStatistics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.within;
+
+public class TemperatureHistoryTests {
+
+    private static final long HOUR = TemperatureHistory.HOUR_MILLIS;
+    private static final long DAY = TemperatureHistory.DAY_MILLIS;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompactionKeepsStatisticsExact() throws Exception {
+        File file = new File(mFolder.newFolder(), "default.log");
+        TemperatureHistory history = new TemperatureHistory(file);
+        RunningStatistics expected = new RunningStatistics();
+        List<Double> samples = new ArrayList<>();
+
+        // Sixty days of observations every twenty minutes, ending now.
+        long now = 100 * DAY;
+        for (long time = now - 60 * DAY; time < now; time += HOUR / 3) {
+            double temperature = 10 + 8 * Math.sin(time / (double) DAY) + (time / HOUR) % 3;
+            history.append(time, temperature);
+            expected.add(temperature);
+            samples.add(temperature);
+        }
+        history.compact(now);
+
+        // One record a day for the oldest 30 days, one an hour down to 2 days ago, the rest raw.
+        assertThat(expected.getCount()).isEqualTo(60 * 72);
+        assertThat(history.getRecords()).isEqualTo(30 + 28 * 24 + 2 * 72);
+
+        RunningStatistics statistics = history.getStatistics(0, now);
+        assertThat(statistics.getCount()).isEqualTo(expected.getCount());
+        assertThat(statistics.getMean()).isCloseTo(expected.getMean(), within(1e-9));
+        assertThat(statistics.getStandardDeviation())
+                .isCloseTo(expected.getStandardDeviation(), within(1e-9));
+        assertThat(statistics.getMin()).isCloseTo(expected.getMin(), within(1e-5));
+        assertThat(statistics.getMax()).isCloseTo(expected.getMax(), within(1e-5));
+
+        // Merged records keep the spread of their samples, so percentiles don't pull in toward
+        // the daily means.
+        Collections.sort(samples);
+        for (int percentile : new int[] {5, 25, 50, 75, 95}) {
+            double exact = samples.get((int) Math.ceil(percentile / 100.0 * samples.size()) - 1);
+            assertThat(history.getPercentile(0, now, percentile)).isCloseTo(exact, within(0.2));
+        }
+    }
+
+    @Test
+    public void testRangesPercentilesAndHalfWrittenRecord() throws Exception {
+        File file = new File(mFolder.newFolder(), "default.log");
+        TemperatureHistory history = new TemperatureHistory(file);
+        for (int i = 1; i <= 100; i++) {
+            history.append(i * HOUR, i / 10.0);
+        }
+
+        assertThat(history.getStatistics(51 * HOUR, 101 * HOUR).getCount()).isEqualTo(50);
+        assertThat(history.getPercentile(0, 101 * HOUR, 50)).isCloseTo(5.0, within(0.01));
+        assertThat(history.getPercentile(0, 101 * HOUR, 95)).isCloseTo(9.5, within(0.01));
+        assertThat(history.getPercentile(200 * HOUR, 300 * HOUR, 50)).isNaN();
+
+        // A crash in the middle of an append leaves part of a record, the next append cuts it.
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[7]);
+        }
+        TemperatureHistory reopened = new TemperatureHistory(file);
+        reopened.append(101 * HOUR, 10.1);
+        assertThat(reopened.getRecords()).isEqualTo(101);
+        assertThat(reopened.getStatistics(0, 102 * HOUR).getMax()).isCloseTo(10.1, within(1e-5));
+    }
+}
@@ -0,0 +1,90 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.Moshi;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class WeatherDataCacheTests {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCacheRoundTrip() throws Exception {
+        WeatherDataCache cache = newCache(mFolder.newFolder(), 64 * 1024);
+
+        assertThat(cache.get("current")).isNull();
+
+        cache.put("current", weatherData("Tweatherville", 14.5), 60 * 1000L, "\"abc\"", null);
+        WeatherDataCache.Entry entry = cache.get("current");
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.data.getName()).isEqualTo("Tweatherville");
+        assertThat(entry.data.getWeather().getTemp()).isEqualTo(14.5);
+        assertThat(entry.isFresh(System.currentTimeMillis())).isTrue();
+        assertThat(entry.eTag).isEqualTo("\"abc\"");
+        assertThat(entry.lastModified).isNull();
+    }
+
+    @Test
+    public void testRefreshExtendsExpiry() throws Exception {
+        WeatherDataCache cache = newCache(mFolder.newFolder(), 64 * 1024);
+
+        cache.put("current", weatherData("Tweatherville", 14.5), -1L, null, "Wed, 14 Aug 2019 21:08:00 GMT");
+        assertThat(cache.get("current").isFresh(System.currentTimeMillis())).isFalse();
+
+        cache.refresh("current", 60 * 1000L);
+        WeatherDataCache.Entry entry = cache.get("current");
+
+        assertThat(entry.isFresh(System.currentTimeMillis())).isTrue();
+        assertThat(entry.lastModified).isEqualTo("Wed, 14 Aug 2019 21:08:00 GMT");
+        assertThat(entry.data.getWeather().getTemp()).isEqualTo(14.5);
+    }
+
+    @Test
+    public void testExpiredEntryIsStillReturned() throws Exception {
+        WeatherDataCache cache = newCache(mFolder.newFolder(), 64 * 1024);
+
+        cache.put("future_1", weatherData("Tweatherville", 20.0), -1L, null, null);
+        WeatherDataCache.Entry entry = cache.get("future_1");
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.isFresh(System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        File directory = mFolder.newFolder();
+        WeatherDataCache cache = newCache(directory, 64 * 1024);
+        cache.put("future_1", weatherData("Tweatherville", 1.0), 60 * 1000L, null, null);
+        long entrySize = new File(directory, "future_1.entry").length();
+
+        cache = newCache(directory, entrySize * 2);
+        cache.put("future_2", weatherData("Tweatherville", 2.0), 60 * 1000L, null, null);
+        new File(directory, "future_1.entry").setLastModified(System.currentTimeMillis() - 60 * 1000L);
+        cache.put("future_3", weatherData("Tweatherville", 3.0), 60 * 1000L, null, null);
+
+        assertThat(cache.get("future_1")).isNull();
+        assertThat(cache.get("future_2")).isNotNull();
+        assertThat(cache.get("future_3")).isNotNull();
+    }
+
+    private static WeatherDataCache newCache(File directory, long maxBytes) {
+        return new WeatherDataCache(directory, maxBytes, new Moshi.Builder().build().adapter(WeatherData.class));
+    }
+
+    private static WeatherData weatherData(String name, double temp) {
+        Weather weather = new Weather();
+        weather.setTemp(temp);
+        WeatherData weatherData = new WeatherData();
+        weatherData.setName(name);
+        weatherData.setWeather(weather);
+        return weatherData;
+    }
+}
@@ -0,0 +1,63 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class WeatherDataJsonAdapterTests {
+
+    private static final String JSON = "{\"coord\":{\"lon\":-122.42,\"lat\":37.77},"
+            + "\"weather\":{\"temp\":14.77,\"pressure\":1007,\"humidity\":85},"
+            + "\"wind\":{\"speed\":0.51,\"deg\":284},\"rain\":{\"3h\":1},"
+            + "\"clouds\":{\"cloudiness\":65},\"name\":\"San Francisco\",\"extra\":[1,{\"a\":2}]}";
+
+    @Test
+    public void testFullDecodingMatchesReflectiveAdapter() throws Exception {
+        WeatherData streamed = new WeatherDataJsonAdapter(false).fromJson(JSON);
+        WeatherData reflective = new Moshi.Builder().build().adapter(WeatherData.class).fromJson(JSON);
+
+        assertThat(streamed.getName()).isEqualTo(reflective.getName());
+        assertThat(streamed.getCoord().getLon()).isEqualTo(reflective.getCoord().getLon());
+        assertThat(streamed.getCoord().getLat()).isEqualTo(reflective.getCoord().getLat());
+        assertThat(streamed.getWeather().getTemp()).isEqualTo(reflective.getWeather().getTemp());
+        assertThat(streamed.getWeather().getPressure()).isEqualTo(reflective.getWeather().getPressure());
+        assertThat(streamed.getWeather().getHumidity()).isEqualTo(reflective.getWeather().getHumidity());
+        assertThat(streamed.getWind().getSpeed()).isEqualTo(reflective.getWind().getSpeed());
+        assertThat(streamed.getWind().getDeg()).isEqualTo(reflective.getWind().getDeg());
+        assertThat(streamed.getRain().get3h()).isEqualTo(reflective.getRain().get3h());
+        assertThat(streamed.getClouds().getCloudiness()).isEqualTo(reflective.getClouds().getCloudiness());
+    }
+
+    @Test
+    public void testLeanDecodingSkipsUnusedFields() throws Exception {
+        WeatherData weatherData = new WeatherDataJsonAdapter(true).fromJson(JSON);
+
+        assertThat(weatherData.isLean()).isTrue();
+        assertThat(weatherData.getName()).isEqualTo("San Francisco");
+        assertThat(weatherData.getWeather().getTemp()).isEqualTo(14.77);
+        assertThat(weatherData.getWind().getSpeed()).isEqualTo(0.51);
+        assertThat(weatherData.getClouds().getCloudiness()).isEqualTo(65);
+        assertThat(weatherData.getCoord()).isNull();
+        assertThat(weatherData.getRain()).isNull();
+        assertThat(weatherData.getWeather().getPressure()).isNull();
+        assertThat(weatherData.getWind().getDeg()).isNull();
+    }
+
+    @Test
+    public void testRoundTripThroughMoshi() throws Exception {
+        JsonAdapter<WeatherData> adapter = new Moshi.Builder()
+                .add(WeatherData.class, new WeatherDataJsonAdapter(false))
+                .build()
+                .adapter(WeatherData.class);
+
+        WeatherData weatherData = adapter.fromJson(adapter.toJson(adapter.fromJson(JSON)));
+
+        assertThat(weatherData.getName()).isEqualTo("San Francisco");
+        assertThat(weatherData.getCoord().getLat()).isEqualTo(37.77);
+        assertThat(weatherData.getRain().get3h()).isEqualTo(1);
+        assertThat(adapter.fromJson("null")).isNull();
+    }
+}
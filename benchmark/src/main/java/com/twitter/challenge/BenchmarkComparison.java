@@ -0,0 +1,81 @@
+package com.twitter.challenge;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* Compares two JMH result files written with "-rf json" and prints the change of every benchmark
+ * found in both.  Exits with status 1 if any benchmark got slower by more than the threshold
+ * percentage, so a build can stop on regressions.  Only time per operation modes are compared,
+ * where a higher score is worse.
+ *
+ * Usage: BenchmarkComparison baseline.json current.json [thresholdPercent]
+ */
+public class BenchmarkComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: BenchmarkComparison baseline.json current.json [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        Map<String, Double> baseline = readScores(new File(args[0]));
+        Map<String, Double> current = readScores(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null || before == 0) {
+                continue;
+            }
+            double change = (entry.getValue() - before) / before * 100;
+            boolean regression = change > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-100s %12.3f -> %12.3f %+8.1f%%%s", entry.getKey(),
+                    before, entry.getValue(), change, regression ? "  REGRESSION" : ""));
+        }
+
+        System.out.println(regressions + " regression(s) over " + threshold + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Map "benchmark {params}" to its score, for the time per operation modes.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Double> readScores(File file) throws IOException {
+        JsonAdapter<List<Map<String, Object>>> adapter = new Moshi.Builder().build().adapter(
+                Types.newParameterizedType(List.class, Map.class));
+        String json = new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+        List<Map<String, Object>> results = adapter.fromJson(json);
+
+        Map<String, Double> scores = new TreeMap<>();
+        if (results == null) {
+            return scores;
+        }
+        for (Map<String, Object> result : results) {
+            String mode = (String) result.get("mode");
+            if (!"avgt".equals(mode) && !"sample".equals(mode) && !"ss".equals(mode)) {
+                continue;
+            }
+            Object params = result.get("params");
+            String key = result.get("benchmark")
+                    + (params == null ? "" : " " + new TreeMap<>((Map<String, Object>) params));
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            scores.put(key, ((Number) metric.get("score")).doubleValue());
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,70 @@
+package com.twitter.challenge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Streaming a long series of minute samples through a one day window, incrementally and by
+// recomputing the window from scratch at every sample.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingWindowBenchmark {
+
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long WINDOW_MILLIS = 24 * 60 * MINUTE_MILLIS;
+
+    @Param({"10000", "300000"})
+    public int size;
+
+    private double[] mTemperatures;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTemperatures = new double[size];
+        for (int i = 0; i < size; i++) {
+            mTemperatures[i] = 15 + random.nextGaussian() * 8;
+        }
+    }
+
+    @Benchmark
+    public double incremental() {
+        SlidingWindowStatistics window = new SlidingWindowStatistics(WINDOW_MILLIS, -100, 70, 0.1);
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            window.add(i * MINUTE_MILLIS, mTemperatures[i]);
+            sum += window.getStandardDeviation() + window.getMax() - window.getMin();
+        }
+        return sum + window.getPercentile(90);
+    }
+
+    // Recompute the last day at every sample, what a window without incremental operators does.
+    @Benchmark
+    public double recomputed() {
+        int perWindow = (int) (WINDOW_MILLIS / MINUTE_MILLIS);
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            RunningStatistics statistics = new RunningStatistics();
+            for (int j = Math.max(0, i - perWindow + 1); j <= i; j++) {
+                statistics.add(mTemperatures[j]);
+            }
+            sum += statistics.getStandardDeviation() + statistics.getMax() - statistics.getMin();
+        }
+        return sum;
+    }
+}
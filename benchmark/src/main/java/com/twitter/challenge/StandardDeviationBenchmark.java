@@ -0,0 +1,65 @@
+package com.twitter.challenge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Standard deviation over a five day forecast and over long series, boxed and primitive input.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StandardDeviationBenchmark {
+
+    @Param({"5", "10000", "1000000"})
+    public int size;
+
+    private List<Float> mBoxed;
+    private float[] mPrimitive;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mBoxed = new ArrayList<>(size);
+        mPrimitive = new float[size];
+        for (int i = 0; i < size; i++) {
+            float temperature = 15 + (float) random.nextGaussian() * 8;
+            mBoxed.add(temperature);
+            mPrimitive[i] = temperature;
+        }
+    }
+
+    @Benchmark
+    public float boxedList() {
+        return StandardDeviationCalculator.standardDeviation(mBoxed);
+    }
+
+    @Benchmark
+    public float primitiveArray() {
+        return StandardDeviationCalculator.standardDeviation(mPrimitive);
+    }
+
+    @Benchmark
+    public double runningStatistics() {
+        RunningStatistics statistics = new RunningStatistics();
+        for (float temperature : mPrimitive) {
+            statistics.add(temperature);
+        }
+        return statistics.getStandardDeviation();
+    }
+}
@@ -0,0 +1,85 @@
+package com.twitter.challenge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Converting a whole series of temperatures: one scalar call per value against the bulk array and
+// FloatBuffer methods.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemperatureConverterBenchmark {
+
+    @Param({"6", "10000", "1000000"})
+    public int size;
+
+    private float[] mCelsius;
+    private float[] mFahrenheit;
+    private FloatBuffer mCelsiusHeap;
+    private FloatBuffer mFahrenheitHeap;
+    private FloatBuffer mCelsiusDirect;
+    private FloatBuffer mFahrenheitDirect;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mCelsius = new float[size];
+        mFahrenheit = new float[size];
+        for (int i = 0; i < size; i++) {
+            mCelsius[i] = 15 + (float) random.nextGaussian() * 8;
+        }
+        mCelsiusHeap = FloatBuffer.wrap(mCelsius);
+        mFahrenheitHeap = FloatBuffer.wrap(mFahrenheit);
+        mCelsiusDirect = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mCelsiusDirect.put(mCelsius);
+        mFahrenheitDirect = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Benchmark
+    public float[] scalarLoop() {
+        for (int i = 0; i < mCelsius.length; i++) {
+            mFahrenheit[i] = TemperatureConverter.celsiusToFahrenheit(mCelsius[i]);
+        }
+        return mFahrenheit;
+    }
+
+    @Benchmark
+    public float[] bulkArray() {
+        TemperatureConverter.celsiusToFahrenheit(mCelsius, mFahrenheit);
+        return mFahrenheit;
+    }
+
+    @Benchmark
+    public FloatBuffer bulkHeapBuffer() {
+        mCelsiusHeap.clear();
+        mFahrenheitHeap.clear();
+        TemperatureConverter.celsiusToFahrenheit(mCelsiusHeap, mFahrenheitHeap);
+        return mFahrenheitHeap;
+    }
+
+    @Benchmark
+    public FloatBuffer bulkDirectBuffer() {
+        mCelsiusDirect.clear();
+        mFahrenheitDirect.clear();
+        TemperatureConverter.celsiusToFahrenheit(mCelsiusDirect, mFahrenheitDirect);
+        return mFahrenheitDirect;
+    }
+}
@@ -0,0 +1,117 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.Moshi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/* Loading every day of a forecast from the local server: one request per endpoint, one after the
+ * other or all at once, against a single batch request.  The server delay stands in for the round
+ * trip, which is what a batch saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchLoadBenchmark {
+
+    private static final long TTL = 60 * 1000L;
+
+    @Param({"0", "20"})
+    public long delayMillis;
+
+    @Param({"5", "15"})
+    public int futureDays;
+
+    private LocalWeatherServer mServer;
+    private File mCacheDirectory;
+    private EndpointLoader mLoader;
+    private ExecutorService mExecutor;
+    private LocationForecast mForecast;
+    private List<String> mEndPoints;
+    private long[] mTimeToLive;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new LocalWeatherServer(true, delayMillis);
+        mServer.start(0);
+
+        mCacheDirectory = Files.createTempDirectory("batch").toFile();
+        Moshi moshi = EndpointLoader.createMoshi();
+        WeatherDataCache cache = new WeatherDataCache(mCacheDirectory, 1024 * 1024,
+                moshi.adapter(WeatherData.class));
+        mLoader = new EndpointLoader(EndpointLoader.createApi(mServer.getBaseUrl()), moshi, cache);
+        mExecutor = Executors.newFixedThreadPool(futureDays + 1);
+        mForecast = new LocationForecast("", futureDays, true);
+
+        mEndPoints = new ArrayList<>();
+        mTimeToLive = new long[futureDays + 1];
+        for (int day = 0; day <= futureDays; day++) {
+            mEndPoints.add(mForecast.getEndPoint(day));
+            mTimeToLive[day] = TTL;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mServer.shutdown();
+        File[] files = mCacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mCacheDirectory.delete();
+    }
+
+    @Benchmark
+    public LocationForecast perEndpointSequential() throws IOException {
+        for (int day = 0; day <= futureDays; day++) {
+            mForecast.put(day, mLoader.load(mEndPoints.get(day), TTL, null, null));
+        }
+        return mForecast;
+    }
+
+    @Benchmark
+    public LocationForecast perEndpointParallel() throws Exception {
+        List<Future<WeatherData>> loads = new ArrayList<>();
+        for (int day = 0; day <= futureDays; day++) {
+            String endPoint = mEndPoints.get(day);
+            loads.add(mExecutor.submit(() -> mLoader.load(endPoint, TTL, null, null)));
+        }
+        for (int day = 0; day <= futureDays; day++) {
+            mForecast.put(day, loads.get(day).get());
+        }
+        return mForecast;
+    }
+
+    @Benchmark
+    public LocationForecast batch() throws IOException {
+        mLoader.loadBatch(mEndPoints, mTimeToLive, null,
+                (index, weatherData) -> mForecast.put(index, weatherData));
+        return mForecast;
+    }
+}
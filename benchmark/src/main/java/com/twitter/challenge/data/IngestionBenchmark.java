@@ -0,0 +1,111 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.Moshi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/* The per-day ingestion path of Repository against a local server: request, decode, write the
+ * cache and store the day in a LocationForecast.  Also measures a revalidation answered with
+ * 304, and a full six document load.  Repository itself needs LiveData and is left out of this
+ * module, so the path is driven through the EndpointLoader and LocationForecast it uses; the
+ * scheduling and publishing around them are not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final String ETAG = "\"benchmark\"";
+    private static final long TTL = 60 * 1000L;
+    private static final String DOCUMENT = "{\"coord\":{\"lon\":-122.42,\"lat\":37.77},"
+            + "\"weather\":{\"temp\":14.77,\"pressure\":1007,\"humidity\":85},"
+            + "\"wind\":{\"speed\":0.51,\"deg\":284},\"rain\":{\"3h\":1},"
+            + "\"clouds\":{\"cloudiness\":65},\"name\":\"San Francisco\"}";
+
+    private MockWebServer mServer;
+    private File mCacheDirectory;
+    private WeatherDataCache mCache;
+    private EndpointLoader mLoader;
+    private LocationForecast mForecast;
+    private WeatherDataCache.Entry mCached;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                    return new MockResponse().setResponseCode(304);
+                }
+                return new MockResponse().setHeader("ETag", ETAG).setBody(DOCUMENT);
+            }
+        });
+        mServer.start();
+
+        mCacheDirectory = Files.createTempDirectory("ingestion").toFile();
+        Moshi moshi = EndpointLoader.createMoshi();
+        mCache = new WeatherDataCache(mCacheDirectory, 1024 * 1024,
+                moshi.adapter(WeatherData.class));
+        mLoader = new EndpointLoader(EndpointLoader.createApi(mServer.url("/").toString()), moshi,
+                mCache);
+        mForecast = new LocationForecast("", 5, true);
+
+        mLoader.load("future_1", TTL, null, null);
+        mCached = mCache.get("future_1");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        File[] files = mCacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mCacheDirectory.delete();
+    }
+
+    @Benchmark
+    public LocationForecast loadDay() throws IOException {
+        mForecast.put(1, mLoader.load("future_1", TTL, null, null));
+        return mForecast;
+    }
+
+    @Benchmark
+    public WeatherData revalidateDay() throws IOException {
+        return mLoader.load("future_1", TTL, mCached, null);
+    }
+
+    @Benchmark
+    public LocationForecast loadAllDays() throws IOException {
+        for (int day = 0; day <= mForecast.getFutureDays(); day++) {
+            mForecast.put(day, mLoader.load(mForecast.getEndPoint(day), TTL, null, null));
+        }
+        return mForecast;
+    }
+}
@@ -0,0 +1,130 @@
+package com.twitter.challenge.data;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/* Local stand-in for the weather server, so loads can be measured offline.  Serves a generated
+ * document for every "current" and "future_n" endpoint, under any location path, and the same
+ * documents as a batch from "batch.json?ids=a,b,c" unless batches are turned off, in which case
+ * it answers 404 like a server without batch support.  Every response can be delayed to stand
+ * in for the round trip to a real server.  Run it on its own with
+ *
+ *   java com.twitter.challenge.data.LocalWeatherServer [port] [delayMillis] [noBatch]
+ */
+public class LocalWeatherServer {
+
+    private static final String CURRENT_ENDPOINT = "current";
+    private static final String FUTURE_ENDPOINT = "future_";
+    private static final String BATCH_PATH = "/batch.json";
+    private static final String DOCUMENT_SUFFIX = ".json";
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final boolean mBatchSupported;
+    private final long mDelayMillis;
+
+    public LocalWeatherServer(boolean batchSupported, long delayMillis) {
+        mBatchSupported = batchSupported;
+        mDelayMillis = delayMillis;
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return delayed(respond(request));
+            }
+        });
+    }
+
+    public void start(int port) throws IOException {
+        mServer.start(port);
+    }
+
+    public void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    // Base URL to give Retrofit, ending in a slash.
+    public String getBaseUrl() {
+        return mServer.url("/").toString();
+    }
+
+    public int getRequestCount() {
+        return mServer.getRequestCount();
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        String path = request.getRequestUrl().encodedPath();
+        if (path.equals(BATCH_PATH)) {
+            if (! mBatchSupported) {
+                return new MockResponse().setResponseCode(404).setBody("Not found");
+            }
+            String ids = request.getRequestUrl().queryParameter("ids");
+            StringBuilder body = new StringBuilder("[");
+            if (ids != null && ! ids.isEmpty()) {
+                for (String id : ids.split(",")) {
+                    if (body.length() > 1) {
+                        body.append(',');
+                    }
+                    String document = document(id);
+                    body.append(document == null ? "null" : document);
+                }
+            }
+            return new MockResponse().setBody(body.append(']').toString());
+        }
+
+        if (path.endsWith(DOCUMENT_SUFFIX)) {
+            String document = document(path.substring(1, path.length() - DOCUMENT_SUFFIX.length()));
+            if (document != null) {
+                return new MockResponse().setBody(document);
+            }
+        }
+        return new MockResponse().setResponseCode(404).setBody("Not found");
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        if (mDelayMillis > 0) {
+            response.setHeadersDelay(mDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    /* The document of an endpoint id such as "current" or "boston/future_3", or null if there is
+       no such endpoint.  Each day gets its own temperature so statistics have something to do.
+    */
+    static String document(String id) {
+        int slash = id.lastIndexOf('/');
+        String location = slash < 0 ? "Tweatherville" : id.substring(0, slash);
+        String endPoint = id.substring(slash + 1);
+        int day;
+        if (endPoint.equals(CURRENT_ENDPOINT)) {
+            day = 0;
+        } else if (endPoint.startsWith(FUTURE_ENDPOINT)) {
+            try {
+                day = Integer.parseInt(endPoint.substring(FUTURE_ENDPOINT.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        return String.format(Locale.US, "{\"coord\":{\"lon\":-122.42,\"lat\":37.77},"
+                + "\"weather\":{\"temp\":%.2f,\"pressure\":1007,\"humidity\":85},"
+                + "\"wind\":{\"speed\":%.2f,\"deg\":284},\"rain\":{\"3h\":1},"
+                + "\"clouds\":{\"cloudiness\":%d},\"name\":\"%s\"}",
+                14.77 + day * 1.5, 0.5 + day * 0.25, (day * 20) % 100, location);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        boolean batchSupported = args.length < 3 || ! args[2].equals("noBatch");
+        LocalWeatherServer server = new LocalWeatherServer(batchSupported, delayMillis);
+        server.start(port);
+        System.out.println("Serving weather documents at " + server.getBaseUrl());
+    }
+}
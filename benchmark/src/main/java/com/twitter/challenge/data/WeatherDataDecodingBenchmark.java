@@ -0,0 +1,96 @@
+package com.twitter.challenge.data;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+/* Decoding WeatherData documents with Moshi's reflective adapter and with the streaming adapter,
+ * lean and full.  A batch is a JSON array of documents.  Padding adds unused fields and subtrees
+ * to each document, the case the lean adapter is meant for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherDataDecodingBenchmark {
+
+    private static final String DOCUMENT = "{\"coord\":{\"lon\":-122.42,\"lat\":37.77},"
+            + "\"weather\":{\"temp\":14.77,\"pressure\":1007,\"humidity\":85},"
+            + "\"wind\":{\"speed\":0.51,\"deg\":284},\"rain\":{\"3h\":1},"
+            + "\"clouds\":{\"cloudiness\":65},\"name\":\"San Francisco\"%s}";
+
+    @Param({"1", "1000"})
+    public int batchSize;
+
+    @Param({"0", "100"})
+    public int padding;
+
+    private byte[] mPayload;
+    private JsonAdapter<List<WeatherData>> mReflective;
+    private JsonAdapter<List<WeatherData>> mStreamingLean;
+    private JsonAdapter<List<WeatherData>> mStreamingFull;
+
+    @Setup
+    public void setUp() {
+        StringBuilder extra = new StringBuilder();
+        for (int i = 0; i < padding; i++) {
+            extra.append(",\"unused_").append(i).append("\":{\"values\":[1.5,2.5,3.5],\"label\":\"x\"}");
+        }
+        String document = String.format(DOCUMENT, extra);
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < batchSize; i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append(document);
+        }
+        mPayload = batch.append(']').toString().getBytes(Charset.forName("UTF-8"));
+
+        mReflective = listAdapter(new Moshi.Builder().build());
+        mStreamingLean = listAdapter(new Moshi.Builder()
+                .add(WeatherData.class, new WeatherDataJsonAdapter(true)).build());
+        mStreamingFull = listAdapter(new Moshi.Builder()
+                .add(WeatherData.class, new WeatherDataJsonAdapter(false)).build());
+    }
+
+    @Benchmark
+    public List<WeatherData> reflective() throws IOException {
+        return mReflective.fromJson(new Buffer().write(mPayload));
+    }
+
+    @Benchmark
+    public List<WeatherData> streamingLean() throws IOException {
+        return mStreamingLean.fromJson(new Buffer().write(mPayload));
+    }
+
+    @Benchmark
+    public List<WeatherData> streamingFull() throws IOException {
+        return mStreamingFull.fromJson(new Buffer().write(mPayload));
+    }
+
+    private static JsonAdapter<List<WeatherData>> listAdapter(Moshi moshi) {
+        return moshi.adapter(Types.newParameterizedType(List.class, WeatherData.class));
+    }
+}